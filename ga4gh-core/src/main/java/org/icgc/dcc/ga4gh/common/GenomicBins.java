@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.common;
+
+import com.google.common.collect.ImmutableList;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static lombok.AccessLevel.PRIVATE;
+
+/*
+ * Genomic binning of variants.
+ *
+ * Routing keys co-locate variants by fixed size bin. A variant is routed by the bin of its start position, so a
+ * region query only has to visit the shards of the bins its [start, end) window overlaps. The loader and the server
+ * must use the same bin size.
+ *
+ * Hierarchical bins follow the UCSC scheme: 5 levels of 128kb, 1Mb, 8Mb, 64Mb and 512Mb bins, a variant being
+ * assigned the smallest bin that fully contains it. Every variant inside a region is assigned one of the bins that
+ * overlap the region, so a terms filter on those bins is an exact superset of a range query.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class GenomicBins {
+
+  /*
+   * Windows spanning more bins than this are not worth routing, they would reach every shard anyway
+   */
+  public static final int MAX_ROUTING_KEYS = 64;
+
+  /*
+   * Hierarchical bins, from the smallest to the largest level
+   */
+  public static final long MAX_BIN_POSITION = 1L << 29;
+  private static final int FIRST_BIN_SHIFT = 17;
+  private static final int NEXT_BIN_SHIFT = 3;
+  private static final int[] BIN_OFFSETS = { 512 + 64 + 8 + 1, 64 + 8 + 1, 8 + 1, 1, 0 };
+
+  /*
+   * Regions overlapping more bins than this are better served by the range query alone
+   */
+  public static final int MAX_BINS = 1024;
+
+  public static String getRoutingKey(@NonNull String referenceName, long position, long binSize) {
+    checkArgument(binSize > 0, "The bin size [%s] must be greater than 0", binSize);
+    return referenceName + ":" + Math.floorDiv(position, binSize);
+  }
+
+  /*
+   * Routing keys of every bin that a variant starting in [start, end) can be routed to, or an empty list when the
+   * window is empty or spans more than MAX_ROUTING_KEYS bins
+   */
+  public static List<String> getRoutingKeys(@NonNull String referenceName, long start, long end, long binSize) {
+    checkArgument(binSize > 0, "The bin size [%s] must be greater than 0", binSize);
+    if (end <= start) {
+      return ImmutableList.of();
+    }
+    val firstBin = Math.floorDiv(start, binSize);
+    val lastBin = Math.floorDiv(end - 1, binSize);
+    if (lastBin - firstBin + 1 > MAX_ROUTING_KEYS) {
+      return ImmutableList.of();
+    }
+    val routingKeys = ImmutableList.<String>builder();
+    for (long bin = firstBin; bin <= lastBin; bin++) {
+      routingKeys.add(referenceName + ":" + bin);
+    }
+    return routingKeys.build();
+  }
+
+  /*
+   * Smallest hierarchical bin containing the [start, end) region. Regions reaching past MAX_BIN_POSITION are put in
+   * the top level bin
+   */
+  public static String getBin(long start, long end) {
+    checkArgument(start >= 0 && end > start, "The region [%s, %s) is empty or negative", start, end);
+    if (end > MAX_BIN_POSITION) {
+      return "0";
+    }
+    long startBin = start >> FIRST_BIN_SHIFT;
+    long endBin = (end - 1) >> FIRST_BIN_SHIFT;
+    for (val offset : BIN_OFFSETS) {
+      if (startBin == endBin) {
+        return Long.toString(offset + startBin);
+      }
+      startBin >>= NEXT_BIN_SHIFT;
+      endBin >>= NEXT_BIN_SHIFT;
+    }
+    return "0";
+  }
+
+  /*
+   * Every hierarchical bin overlapping the [start, end) region, or an empty list when the region is empty, reaches
+   * past MAX_BIN_POSITION or overlaps more than MAX_BINS bins
+   */
+  public static List<String> getOverlappingBins(long start, long end) {
+    if (end <= start || end > MAX_BIN_POSITION) {
+      return ImmutableList.of();
+    }
+    val first = Math.max(start, 0);
+    val bins = ImmutableList.<String>builder();
+    int numBins = 0;
+    int shift = FIRST_BIN_SHIFT;
+    for (val offset : BIN_OFFSETS) {
+      val startBin = first >> shift;
+      val endBin = (end - 1) >> shift;
+      numBins += endBin - startBin + 1;
+      if (numBins > MAX_BINS) {
+        return ImmutableList.of();
+      }
+      for (long bin = startBin; bin <= endBin; bin++) {
+        bins.add(Long.toString(offset + bin));
+      }
+      shift += NEXT_BIN_SHIFT;
+    }
+    return bins.build();
+  }
+
+}
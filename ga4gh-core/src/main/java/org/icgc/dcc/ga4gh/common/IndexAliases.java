@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.common;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.client.Client;
+
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.stream.Collectors.toList;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.common.core.util.stream.Streams.stream;
+
+/*
+ * Blue/green index management. Each load writes a versioned index named <alias>-<yyyyMMdd_HHmmss>, and readers go
+ * through the alias, which is moved atomically once a load is complete. Versioned names sort chronologically, so
+ * the previous indices can be kept for rollback and the older ones pruned.
+ */
+@Slf4j
+@NoArgsConstructor(access = PRIVATE)
+public final class IndexAliases {
+
+  private static final Pattern VERSION_PATTERN = Pattern.compile("\\d{8}_\\d{6}");
+
+  public static boolean isVersionedIndex(@NonNull String aliasName, @NonNull String indexName) {
+    val prefix = aliasName + "-";
+    return indexName.startsWith(prefix) && VERSION_PATTERN.matcher(indexName.substring(prefix.length())).matches();
+  }
+
+  /*
+   * Concrete indices a name refers to: the indices an alias points at, the index itself if the name is not an
+   * alias, or nothing if neither exists
+   */
+  public static Set<String> resolveIndices(@NonNull Client client, @NonNull String name) {
+    val indices = client.admin().indices();
+    val aliased = ImmutableSet.copyOf(indices.prepareGetAliases(name).get().getAliases().keysIt());
+    if (!aliased.isEmpty()) {
+      return aliased;
+    }
+    return indices.prepareExists(name).get().isExists() ? ImmutableSet.of(name) : ImmutableSet.of();
+  }
+
+  /*
+   * Versioned indices belonging to the alias, oldest first
+   */
+  public static List<String> listVersionedIndices(@NonNull Client client, @NonNull String aliasName) {
+    val indexNames = client.admin().indices().prepareGetIndex().addIndices(aliasName + "-*").get().getIndices();
+    return stream(indexNames)
+        .filter(indexName -> isVersionedIndex(aliasName, indexName))
+        .sorted()
+        .collect(toList());
+  }
+
+  /*
+   * Atomically moves the alias from whichever indices currently hold it onto the target index, and returns the
+   * indices it was removed from
+   */
+  public static Set<String> swapAlias(@NonNull Client client, @NonNull String aliasName, @NonNull String indexName) {
+    val indices = client.admin().indices();
+    checkArgument(indices.prepareExists(indexName).get().isExists(), "The index [%s] does not exist", indexName);
+    val current = ImmutableSet.copyOf(indices.prepareGetAliases(aliasName).get().getAliases().keysIt());
+    checkState(!current.isEmpty() || !indices.prepareExists(aliasName).get().isExists(),
+        "[%s] is a concrete index and cannot be used as an alias, rename or delete it first", aliasName);
+
+    val request = indices.prepareAliases();
+    val previous = ImmutableSet.<String>builder();
+    for (val currentIndexName : current) {
+      if (!currentIndexName.equals(indexName)) {
+        request.removeAlias(currentIndexName, aliasName);
+        previous.add(currentIndexName);
+      }
+    }
+    request.addAlias(indexName, aliasName);
+    checkState(request.get().isAcknowledged(), "The swap of alias [%s] to index [%s] was not acknowledged",
+        aliasName, indexName);
+    val removed = previous.build();
+    log.info("Alias [{}] now points to index [{}], previously {}", aliasName, indexName, removed);
+    return removed;
+  }
+
+  /*
+   * Points the alias back at the newest versioned index older than the one it currently serves
+   */
+  public static String rollback(@NonNull Client client, @NonNull String aliasName) {
+    val current = resolveIndices(client, aliasName);
+    checkState(!current.isEmpty(), "The alias [%s] does not point to any index", aliasName);
+    val oldestCurrent = current.stream().sorted().findFirst().get();
+    val previous = listVersionedIndices(client, aliasName).stream()
+        .filter(indexName -> indexName.compareTo(oldestCurrent) < 0)
+        .reduce((first, second) -> second)
+        .orElseThrow(() -> new IllegalStateException(
+            String.format("There is no index older than [%s] to roll the alias [%s] back to", oldestCurrent, aliasName)));
+    swapAlias(client, aliasName, previous);
+    return previous;
+  }
+
+  /*
+   * Deletes the versioned indices older than the ones the alias serves, except for the newest numRetained of them.
+   * Indices newer than the served ones (for example a load in progress) are never touched.
+   */
+  public static Set<String> pruneIndices(@NonNull Client client, @NonNull String aliasName, int numRetained) {
+    checkArgument(numRetained >= 0, "The number of retained indices must be non-negative, found %s", numRetained);
+    val current = resolveIndices(client, aliasName);
+    if (current.isEmpty()) {
+      log.info("The alias [{}] does not point to any index, nothing to prune", aliasName);
+      return ImmutableSet.of();
+    }
+    val oldestCurrent = current.stream().sorted().findFirst().get();
+    val older = listVersionedIndices(client, aliasName).stream()
+        .filter(indexName -> indexName.compareTo(oldestCurrent) < 0)
+        .collect(toList());
+    val numDeleted = Math.max(0, older.size() - numRetained);
+    val deleted = ImmutableSet.copyOf(older.subList(0, numDeleted));
+    if (!deleted.isEmpty()) {
+      val indexNames = deleted.toArray(new String[deleted.size()]);
+      checkState(client.admin().indices().prepareDelete(indexNames).get().isAcknowledged(),
+          "The deletion of indices %s was not acknowledged", deleted);
+    }
+    log.info("Pruned indices {} of alias [{}], retained {}", deleted, aliasName, older.subList(numDeleted, older.size()));
+    return deleted;
+  }
+
+}
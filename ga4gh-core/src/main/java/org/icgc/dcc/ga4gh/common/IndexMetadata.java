@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.common;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.elasticsearch.client.Client;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
+
+/*
+ * Load settings recorded in the _meta of the variant mapping, so that every reader and writer of an index uses the
+ * values it was loaded with instead of configuring them separately
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class IndexMetadata {
+
+  public static final String META = "_meta";
+  public static final String ROUTING_BIN_SIZE = "routing_bin_size";
+
+  /*
+   * Records the routing bin size in a variant mapping file, which is keyed by the type name
+   */
+  public static ObjectNode putRoutingBinSize(@NonNull ObjectNode variantMapping, long routingBinSize) {
+    checkArgument(variantMapping.has(VARIANT), "The mapping does not define the type [%s]", VARIANT);
+    variantMapping.with(VARIANT).with(META).put(ROUTING_BIN_SIZE, routingBinSize);
+    return variantMapping;
+  }
+
+  /*
+   * Bin size the variants of the index or alias were routed with. Indices loaded before it was recorded used the
+   * default routing by id, so 0 is returned for them.
+   */
+  @SneakyThrows
+  @SuppressWarnings("unchecked")
+  public static long readRoutingBinSize(@NonNull Client client, @NonNull String name) {
+    val mappings = client.admin().indices().prepareGetMappings(name).setTypes(VARIANT).get().getMappings();
+    checkState(mappings.size() == 1, "[%s] must resolve to exactly one index, found %s", name, mappings.size());
+    val mapping = mappings.valuesIt().next().get(VARIANT);
+    checkState(mapping != null, "The index [%s] has no mapping for the type [%s]", name, VARIANT);
+    val meta = (Map<String, Object>) mapping.sourceAsMap().get(META);
+    val routingBinSize = meta == null ? null : (Number) meta.get(ROUTING_BIN_SIZE);
+    return routingBinSize == null ? 0 : routingBinSize.longValue();
+  }
+
+}
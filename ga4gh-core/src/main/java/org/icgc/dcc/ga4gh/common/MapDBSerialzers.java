@@ -18,6 +18,7 @@
 
 package org.icgc.dcc.ga4gh.common;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.NoArgsConstructor;
@@ -38,6 +39,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkState;
 import static lombok.AccessLevel.PRIVATE;
 
 @NoArgsConstructor(access = PRIVATE)
@@ -97,30 +99,98 @@ public class MapDBSerialzers {
     return list;
   }
 
+  /**
+   * Versioned, tagged binary encoding of info maps. Values of the types htsjdk produces are written with a one
+   * byte tag followed by a compact encoding, and well known keys are written as an index into KNOWN_KEYS. Any
+   * other type falls back to java serialization. Data written by the legacy format (number of keys, then
+   * writeUTF key and java serialized value for each entry) is still readable, since its first int, the number
+   * of keys, can never be equal to FORMAT_MARKER.
+   */
   @RequiredArgsConstructor
   public static class StringObjectMapSerializer implements Serializer<Map<String, Object>>, Serializable {
 
     private static final ObjectSerializer OBJECT_SERIALIZER = new ObjectSerializer();
 
+    private static final int FORMAT_MARKER = -1;
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_TRUE = 6;
+    private static final byte TAG_FALSE = 7;
+    private static final byte TAG_LIST = 8;
+    private static final byte TAG_JAVA = 9;
+
+    private static final int INLINE_KEY = 0;
+
+    // Append only. Reordering or removing keys breaks previously persisted data
+    private static final List<String> KNOWN_KEYS = ImmutableList.of(
+        "1000genomes_AF",
+        "1000genomes_ID",
+        "Callers",
+        "NumCallers",
+        "cosmic",
+        "dbsnp",
+        "repeat_masker",
+        "dbsnp_somatic",
+        "VAF",
+        "n_vaf",
+        "t_alt_count",
+        "t_ref_count",
+        "n_alt_count",
+        "n_ref_count",
+        "model_score",
+        "Variant_Classification");
+
+    private static final Map<String, Integer> KNOWN_KEY_INDICES = createKnownKeyIndices();
+
+    private static Map<String, Integer> createKnownKeyIndices(){
+      val map = Maps.<String, Integer>newHashMap();
+      for (int i = 0; i < KNOWN_KEYS.size(); i++){
+        map.put(KNOWN_KEYS.get(i), i + 1);
+      }
+      return map;
+    }
+
     @Override
     public void serialize(@NonNull DataOutput2 out, @NonNull Map<String, Object> value)
         throws IOException {
-      val numKeys = value.keySet().size();
+      out.packInt(FORMAT_MARKER);
+      out.writeByte(FORMAT_VERSION);
       //Write number of keys
-      out.packInt(numKeys);
-      for (val key : value.keySet()){
-        //Write key
-        out.writeUTF(key);
-        OBJECT_SERIALIZER.serialize(out, value.get(key));
+      out.packInt(value.size());
+      for (val entry : value.entrySet()){
+        writeKey(out, entry.getKey());
+        writeValue(out, entry.getValue());
       }
     }
 
     @Override
     @SneakyThrows
     public Map<String, Object> deserialize(@NonNull DataInput2 input, int x) throws IOException {
+      val first = input.unpackInt();
+      if (first != FORMAT_MARKER){
+        return deserializeLegacy(input, x, first);
+      }
+      val version = input.readByte();
+      checkState(version == FORMAT_VERSION, "Unsupported info map format version [%s]", version);
       val map = Maps.<String, Object>newHashMap();
       //Read number of keys
       val numKeys = input.unpackInt();
+      for (int i =0; i< numKeys; i++){
+        val key = readKey(input);
+        map.put(key, readValue(input, x));
+      }
+      return map;
+    }
+
+    private static Map<String, Object> deserializeLegacy(DataInput2 input, int x, final int numKeys)
+        throws IOException {
+      val map = Maps.<String, Object>newHashMap();
       for (int i =0; i< numKeys; i++){
         //Read key
         val key = input.readUTF();
@@ -132,6 +202,105 @@ public class MapDBSerialzers {
       }
       return map;
     }
+
+    private static void writeKey(DataOutput2 out, String key) throws IOException {
+      val index = KNOWN_KEY_INDICES.get(key);
+      if (index == null){
+        out.packInt(INLINE_KEY);
+        STRING.serialize(out, key);
+      } else {
+        out.packInt(index);
+      }
+    }
+
+    private static String readKey(DataInput2 input) throws IOException {
+      val index = input.unpackInt();
+      return index == INLINE_KEY ? STRING.deserialize(input, -1) : KNOWN_KEYS.get(index - 1);
+    }
+
+    private static void writeValue(DataOutput2 out, Object value) throws IOException {
+      if (value == null){
+        out.writeByte(TAG_NULL);
+      } else if (value instanceof String){
+        out.writeByte(TAG_STRING);
+        STRING.serialize(out, (String) value);
+      } else if (value instanceof Integer){
+        out.writeByte(TAG_INT);
+        out.packInt(zigZag((Integer) value));
+      } else if (value instanceof Long){
+        out.writeByte(TAG_LONG);
+        out.packLong(zigZag((Long) value));
+      } else if (value instanceof Double){
+        out.writeByte(TAG_DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Float){
+        out.writeByte(TAG_FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value instanceof Boolean){
+        out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+      } else if (value instanceof List){
+        val list = (List<?>) value;
+        out.writeByte(TAG_LIST);
+        out.packInt(list.size());
+        for (val element : list){
+          writeValue(out, element);
+        }
+      } else {
+        out.writeByte(TAG_JAVA);
+        OBJECT_SERIALIZER.serialize(out, value);
+      }
+    }
+
+    private static Object readValue(DataInput2 input, int x) throws IOException {
+      val tag = input.readByte();
+      switch (tag){
+        case TAG_NULL:
+          return null;
+        case TAG_STRING:
+          return STRING.deserialize(input, x);
+        case TAG_INT:
+          return unZigZag(input.unpackInt());
+        case TAG_LONG:
+          return unZigZag(input.unpackLong());
+        case TAG_DOUBLE:
+          return input.readDouble();
+        case TAG_FLOAT:
+          return input.readFloat();
+        case TAG_TRUE:
+          return Boolean.TRUE;
+        case TAG_FALSE:
+          return Boolean.FALSE;
+        case TAG_LIST: {
+          val size = input.unpackInt();
+          val list = Lists.newArrayListWithCapacity(size);
+          for (int i = 0; i < size; i++){
+            list.add(readValue(input, x));
+          }
+          return list;
+        }
+        case TAG_JAVA:
+          return OBJECT_SERIALIZER.deserialize(input, x);
+        default:
+          throw new IllegalStateException(String.format("Unknown info value tag [%s]", tag));
+      }
+    }
+
+    private static int zigZag(final int value){
+      return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(final int value){
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(final long value){
+      return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value){
+      return (value >>> 1) ^ -(value & 1);
+    }
+
   }
 
   public static class ObjectSerializer  implements Serializer<Object>, Serializable{
@@ -24,6 +24,7 @@ import static lombok.AccessLevel.PRIVATE;
 @NoArgsConstructor(access = PRIVATE)
 public final class PropertyNames {
 
+  public static final String DOC_ID = "doc_id";
   public static final String NAME = "name";
   public static final String BIO_SAMPLE_ID = "bio_sample_id";
   public static final String VARIANT_SET_IDS = "variant_set_ids";
@@ -34,6 +35,7 @@ public final class PropertyNames {
   public static final String REFERENCE_SET_ID = "reference_set_id";
   public static final String START = "start";
   public static final String END = "end";
+  public static final String BIN = "bin";
   public static final String CALLS = "calls";
   public static final String REFERENCE_NAME = "reference_name";
   public static final String INFO = "info";
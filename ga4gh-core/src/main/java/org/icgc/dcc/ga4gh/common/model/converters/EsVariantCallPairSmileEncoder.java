@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.common.model.converters;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.TypeChecker;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.common.GenomicBins.getBin;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.ALTERNATIVE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.BIN;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.CALL_SET_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.CALL_SET_NAME;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.END;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.INFO;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_NAME;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.START;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_IDS;
+import static org.icgc.dcc.ga4gh.common.TypeNames.CALLS;
+
+/**
+ * Encodes an EsVariantCallPair directly to a SMILE document, producing the same document as
+ * EsVariantCallPairConverterJson without building the intermediate ObjectNode tree. The document id is also
+ * written to the doc_id field, which has doc values and is used as the paging tie breaker. Each thread reuses
+ * its own output buffer, so only the returned byte array is allocated per document. A buffer that grew past
+ * MAX_RETAINED_BUFFER_SIZE for an unusually large document is dropped afterwards, so it is not held for the life
+ * of the thread.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class EsVariantCallPairSmileEncoder {
+
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+
+  private final SmileFactory smileFactory = new SmileFactory();
+  private final ThreadLocal<ByteArrayOutputStream> buffers =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+  @SneakyThrows
+  public byte[] encode(@NonNull EsVariantCallPair esVariantCallPair, final long docId) {
+    val buffer = buffers.get();
+    buffer.reset();
+    try (val generator = smileFactory.createGenerator(buffer)) {
+      generator.writeStartObject();
+      generator.writeNumberField(DOC_ID, docId);
+      writeVariantFields(generator, esVariantCallPair.getVariant());
+      generator.writeArrayFieldStart(CALLS);
+      for (val call : esVariantCallPair.getCalls()) {
+        writeCall(generator, call);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    val bytes = buffer.toByteArray();
+    if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+      buffers.remove();
+    }
+    return bytes;
+  }
+
+  private static void writeVariantFields(JsonGenerator generator, EsVariant variant) throws IOException {
+    generator.writeNumberField(START, variant.getStart());
+    generator.writeNumberField(END, variant.getEnd());
+    generator.writeStringField(BIN, getBin(variant.getStart(), variant.getEnd() + 1L));
+    generator.writeStringField(REFERENCE_NAME, variant.getReferenceName());
+    generator.writeStringField(REFERENCE_BASES, variant.getReferenceBases());
+    generator.writeArrayFieldStart(ALTERNATIVE_BASES);
+    for (val alternativeBases : variant.getAlternativeBases()) {
+      generator.writeString(alternativeBases);
+    }
+    generator.writeEndArray();
+  }
+
+  private static void writeCall(JsonGenerator generator, EsConsensusCall call) throws IOException {
+    generator.writeStartObject();
+    generator.writeArrayFieldStart(VARIANT_SET_IDS);
+    for (val variantSetId : call.getVariantSetIds()) {
+      generator.writeNumber(variantSetId);
+    }
+    generator.writeEndArray();
+    generator.writeNumberField(CALL_SET_ID, call.getCallSetId());
+    generator.writeStringField(CALL_SET_NAME, call.getCallSetName());
+    generator.writeFieldName(INFO);
+    writeMap(generator, call.getInfo());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Same conversion as JsonNodeConverters.convertMap: collections become arrays of strings, maps are nested, and
+   * everything else is written as a string
+   */
+  private static void writeMap(JsonGenerator generator, Map<?, ?> map) throws IOException {
+    generator.writeStartObject();
+    for (val entry : map.entrySet()) {
+      val key = entry.getKey().toString();
+      val value = entry.getValue();
+      if (TypeChecker.isObjectCollection(value)) {
+        generator.writeArrayFieldStart(key);
+        for (val element : (Collection<?>) value) {
+          generator.writeString(element.toString());
+        }
+        generator.writeEndArray();
+      } else if (TypeChecker.isObjectMap(value)) {
+        generator.writeFieldName(key);
+        writeMap(generator, (Map<?, ?>) value);
+      } else {
+        generator.writeStringField(key, value.toString());
+      }
+    }
+    generator.writeEndObject();
+  }
+
+  public static EsVariantCallPairSmileEncoder createEsVariantCallPairSmileEncoder() {
+    return new EsVariantCallPairSmileEncoder();
+  }
+
+}
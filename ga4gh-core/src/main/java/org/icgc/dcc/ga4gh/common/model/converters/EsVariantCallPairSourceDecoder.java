@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.common.model.converters;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.google.common.base.Preconditions.checkState;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.ALTERNATIVE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.CALL_SET_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.CALL_SET_NAME;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.END;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.INFO;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_NAME;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.START;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_IDS;
+import static org.icgc.dcc.ga4gh.common.TypeNames.CALLS;
+
+/**
+ * Decodes the raw _source bytes of a variant document, JSON or SMILE, straight into an EsVariantCallPair with a
+ * streaming parser. Unlike the SearchHitConverters, no Map of the source is built, and numbers are read as numbers.
+ * Info values are read as strings, lists and maps, as written by EsVariantCallPairSmileEncoder.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class EsVariantCallPairSourceDecoder {
+
+  private static final byte[] SMILE_HEADER = { ':', ')', '\n' };
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final SmileFactory smileFactory = new SmileFactory();
+
+  /**
+   * Decodes the variant and all of its calls
+   */
+  public EsVariantCallPair decode(@NonNull BytesReference source) {
+    return decodeSource(source, null);
+  }
+
+  /**
+   * Decodes the variant and only the calls of the allowed call sets. No call is decoded for an empty set
+   */
+  public EsVariantCallPair decode(@NonNull BytesReference source, @NonNull Set<String> allowedCallSetIds) {
+    return decodeSource(source, allowedCallSetIds);
+  }
+
+  /**
+   * Decodes the variant of the source, and the calls of the inner hits of a nested query on the calls
+   */
+  public EsVariantCallPair decode(@NonNull BytesReference source, @NonNull SearchHits callHits) {
+    val pair = EsVariantCallPair.builder()
+        .variant(decodeSource(source, ImmutableSet.of()).getVariant());
+    for (val callHit : callHits) {
+      pair.call(decodeCall(callHit.getSourceRef()));
+    }
+    return pair.build();
+  }
+
+  @SneakyThrows
+  public EsConsensusCall decodeCall(@NonNull BytesReference source) {
+    try (val parser = createParser(source)) {
+      checkState(parser.nextToken() == START_OBJECT, "The call source does not start with an object");
+      return readCall(parser);
+    }
+  }
+
+  public static boolean hasInnerHits(@NonNull SearchHit hit, @NonNull String innerHitsName) {
+    val innerHits = hit.getInnerHits();
+    return innerHits != null && innerHits.containsKey(innerHitsName);
+  }
+
+  @SneakyThrows
+  private EsVariantCallPair decodeSource(BytesReference source, Set<String> allowedCallSetIds) {
+    try (val parser = createParser(source)) {
+      checkState(parser.nextToken() == START_OBJECT, "The variant source does not start with an object");
+      val pair = EsVariantCallPair.builder();
+      val variant = EsVariant.builder();
+      while (parser.nextToken() == FIELD_NAME) {
+        val fieldName = parser.getCurrentName();
+        parser.nextToken();
+        switch (fieldName) {
+        case START:
+          variant.start(parser.getValueAsInt());
+          break;
+        case END:
+          variant.end(parser.getValueAsInt());
+          break;
+        case REFERENCE_NAME:
+          variant.referenceName(parser.getText());
+          break;
+        case REFERENCE_BASES:
+          variant.referenceBases(parser.getText());
+          break;
+        case ALTERNATIVE_BASES:
+          while (parser.nextToken() != END_ARRAY) {
+            variant.alternativeBase(parser.getText());
+          }
+          break;
+        case CALLS:
+          readCalls(parser, allowedCallSetIds, pair);
+          break;
+        default:
+          parser.skipChildren();
+        }
+      }
+      return pair.variant(variant.build()).build();
+    }
+  }
+
+  private static void readCalls(JsonParser parser, Set<String> allowedCallSetIds,
+      EsVariantCallPair.EsVariantCallPairBuilder pair) throws IOException {
+    if (allowedCallSetIds != null && allowedCallSetIds.isEmpty()) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == START_OBJECT) {
+      val call = readCall(parser);
+      if (allowedCallSetIds == null || allowedCallSetIds.contains(Integer.toString(call.getCallSetId()))) {
+        pair.call(call);
+      }
+    }
+  }
+
+  private static EsConsensusCall readCall(JsonParser parser) throws IOException {
+    val call = EsConsensusCall.builder();
+    while (parser.nextToken() == FIELD_NAME) {
+      val fieldName = parser.getCurrentName();
+      parser.nextToken();
+      switch (fieldName) {
+      case VARIANT_SET_IDS:
+        val variantSetIds = Lists.<Integer>newArrayList();
+        while (parser.nextToken() != END_ARRAY) {
+          variantSetIds.add(parser.getValueAsInt());
+        }
+        call.variantSetIds(variantSetIds);
+        break;
+      case CALL_SET_ID:
+        call.callSetId(parser.getValueAsInt());
+        break;
+      case CALL_SET_NAME:
+        call.callSetName(parser.getText());
+        break;
+      case INFO:
+        call.info(readMap(parser));
+        break;
+      default:
+        parser.skipChildren();
+      }
+    }
+    return call.build();
+  }
+
+  /**
+   * The map is mutable, as the info of a call is completed when converted to a GA4GH call
+   */
+  private static Map<String, Object> readMap(JsonParser parser) throws IOException {
+    val map = Maps.<String, Object>newHashMap();
+    while (parser.nextToken() == FIELD_NAME) {
+      val key = parser.getCurrentName();
+      map.put(key, readValue(parser, parser.nextToken()));
+    }
+    return map;
+  }
+
+  private static List<Object> readList(JsonParser parser) throws IOException {
+    val list = Lists.<Object>newArrayList();
+    for (JsonToken token = parser.nextToken(); token != END_ARRAY; token = parser.nextToken()) {
+      list.add(readValue(parser, token));
+    }
+    return list;
+  }
+
+  private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+    if (token == START_OBJECT) {
+      return readMap(parser);
+    } else if (token == START_ARRAY) {
+      return readList(parser);
+    } else {
+      return parser.getText();
+    }
+  }
+
+  private JsonParser createParser(BytesReference source) throws IOException {
+    val bytesRef = source.toBytesRef();
+    val factory = isSmile(bytesRef.bytes, bytesRef.offset, bytesRef.length) ? smileFactory : jsonFactory;
+    return factory.createParser(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+  }
+
+  private static boolean isSmile(byte[] bytes, int offset, int length) {
+    if (length < SMILE_HEADER.length) {
+      return false;
+    }
+    for (int i = 0; i < SMILE_HEADER.length; i++) {
+      if (bytes[offset + i] != SMILE_HEADER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static EsVariantCallPairSourceDecoder createEsVariantCallPairSourceDecoder() {
+    return new EsVariantCallPairSourceDecoder();
+  }
+
+}
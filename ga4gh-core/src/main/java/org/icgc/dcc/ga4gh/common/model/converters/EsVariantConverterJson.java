@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 
 import static org.icgc.dcc.common.core.json.JsonNodeBuilders.object;
+import static org.icgc.dcc.ga4gh.common.GenomicBins.getBin;
 import static org.icgc.dcc.ga4gh.common.SearchHits.convertSourceToInteger;
 import static org.icgc.dcc.ga4gh.common.SearchHits.convertSourceToString;
 import static org.icgc.dcc.ga4gh.common.SearchHits.convertSourceToStringList;
@@ -73,11 +74,15 @@ public class EsVariantConverterJson
         .build();
   }
 
+  /**
+   * The end of a variant is inclusive, so its bin is the one of the [start, end + 1) region
+   */
   @Override
   public ObjectNode convertToObjectNode(EsVariant variant) {
     return object()
         .with(PropertyNames.START, variant.getStart())
         .with(PropertyNames.END, variant.getEnd())
+        .with(PropertyNames.BIN, getBin(variant.getStart(), variant.getEnd() + 1L))
         .with(PropertyNames.REFERENCE_NAME, variant.getReferenceName())
         .with(PropertyNames.REFERENCE_BASES, variant.getReferenceBases())
         .with(PropertyNames.ALTERNATIVE_BASES, JsonNodeConverters.convertStrings(variant.getAlternativeBases()))
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader;
+
+import lombok.val;
+
+import static org.icgc.dcc.common.core.util.stream.Streams.stream;
+
+public enum AggregatorModes {
+  MAP_DB(1), APPEND_ONLY(2), SORT_MERGE(3);
+
+  private int mode;
+
+  private AggregatorModes(final int mode) {
+    this.mode = mode;
+  }
+
+  public int getModeId() {
+    return this.mode;
+  }
+
+  public static AggregatorModes parseAggregatorMode(final int inputMode) {
+    val mode = stream(values()).filter(l -> l.getModeId()==inputMode).findFirst();
+    return mode.orElseThrow(() -> new IllegalArgumentException(String.format("The inputMode %s does not exist for AggregatorModes", inputMode)));
+  }
+
+}
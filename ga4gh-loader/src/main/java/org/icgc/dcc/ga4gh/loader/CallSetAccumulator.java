@@ -18,14 +18,24 @@
 
 package org.icgc.dcc.ga4gh.loader;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.val;
 import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
+import org.icgc.dcc.ga4gh.loader.persistance.ObjectPersistance;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.IdStorage;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorage;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.RamMapStorage;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -36,14 +46,16 @@ import static org.icgc.dcc.ga4gh.common.model.es.EsCallSet.createEsCallSet;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.IntegerIdStorage.createIntegerIdStorage;
 
 @RequiredArgsConstructor
-public class CallSetAccumulator {
+public class CallSetAccumulator implements Checkpointable {
+
+  private static final String CHECKPOINT_FILENAME = "callSetAccumulator.dat";
 
   private final Map<String,Set<Integer>> variantSetIdsMap;
   private final Map<String, Integer> callSetIdMap;
 
   private int idCount = 0;
 
-  public void addVariantSetId(String callSetName, int variantSetId){
+  public synchronized void addVariantSetId(String callSetName, int variantSetId){
     if (!variantSetIdsMap.containsKey(callSetName)){
       variantSetIdsMap.put(callSetName, Sets.newHashSet(variantSetId));
       callSetIdMap.put(callSetName, ++idCount);
@@ -53,11 +65,22 @@ public class CallSetAccumulator {
     }
   }
 
-  public void addVariantSetIds(String callSetName, Iterable<Integer> variantSetIds){
+  public synchronized void addVariantSetIds(String callSetName, Iterable<Integer> variantSetIds){
     stream(variantSetIds).forEach(x -> addVariantSetId(callSetName, x));
   }
 
-  public int getId(String callSetName){
+  /**
+   * Adds a call set that is already indexed, keeping its id. Call sets added afterwards get ids greater than all
+   * existing ones.
+   */
+  public synchronized void addExistingCallSet(String callSetName, int callSetId, Iterable<Integer> variantSetIds){
+    checkArgument(!callSetIdMap.containsKey(callSetName), "The callSetName [%s] already exists", callSetName);
+    variantSetIdsMap.put(callSetName, Sets.newHashSet(variantSetIds));
+    callSetIdMap.put(callSetName, callSetId);
+    idCount = Math.max(idCount, callSetId);
+  }
+
+  public synchronized int getId(String callSetName){
     checkArgument(callSetIdMap.containsKey(callSetName), "The callSetName [%s] DNE", callSetName);
     return callSetIdMap.get(callSetName);
   }
@@ -86,10 +109,40 @@ public class CallSetAccumulator {
         .map(this::buildEsCallSet);
   }
 
+  @Override
+  public synchronized void checkpoint(Path dir) throws IOException {
+    val variantSetIdsCopy = Maps.<String, HashSet<Integer>>newHashMap();
+    variantSetIdsMap.forEach((k, v) -> variantSetIdsCopy.put(k, Sets.newHashSet(v)));
+    val state = new State(variantSetIdsCopy, Maps.newHashMap(callSetIdMap), idCount);
+    ObjectPersistance.store(state, dir.resolve(CHECKPOINT_FILENAME));
+  }
+
+  @Override
+  @SneakyThrows
+  public synchronized void restore(Path dir) throws IOException {
+    val state = (State) ObjectPersistance.restore(dir.resolve(CHECKPOINT_FILENAME));
+    variantSetIdsMap.clear();
+    variantSetIdsMap.putAll(state.getVariantSetIdsMap());
+    callSetIdMap.clear();
+    callSetIdMap.putAll(state.getCallSetIdMap());
+    idCount = state.getIdCount();
+  }
+
   public static CallSetAccumulator createCallSetAccumulator(Map<String, Set<Integer>> variantSetIdsMap,
       Map<String, Integer> callSetIdMap) {
     return new CallSetAccumulator(variantSetIdsMap, callSetIdMap);
   }
 
+  @Value
+  private static class State implements Serializable {
+
+    private static final long serialVersionUID = 1508284800L;
+
+    private final HashMap<String, HashSet<Integer>> variantSetIdsMap;
+    private final HashMap<String, Integer> callSetIdMap;
+    private final int idCount;
+
+  }
+
 
 }
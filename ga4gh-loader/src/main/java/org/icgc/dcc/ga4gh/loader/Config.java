@@ -30,6 +30,8 @@ import static java.lang.Long.parseLong;
 import static java.lang.System.getProperty;
 import static org.icgc.dcc.ga4gh.common.MiscNames.FALSE;
 import static org.icgc.dcc.ga4gh.common.MiscNames.TRUE;
+import static org.icgc.dcc.ga4gh.loader.AggregatorModes.parseAggregatorMode;
+import static org.icgc.dcc.ga4gh.loader.VariantIdModes.parseVariantIdMode;
 import static org.icgc.dcc.ga4gh.loader.LoaderModes.parseLoaderMode;
 
 public class Config {
@@ -38,7 +40,14 @@ public class Config {
   public static final LoaderModes LOADER_MODE = parseLoaderMode(parseInt(getProperty("loader_mode", "3")));
   public static final String PARENT_CHILD_INDEX_NAME = getProperty("parent_child_index_name", "dcc-variants-pc");
   public static final String NESTED_INDEX_NAME = getProperty("nested_index_name", "dcc-variants-nested");
-  public static final String INDEX_NAME = getProperty("index_name", "dcc-variants-"+CURRENT_TIMESTAMP);
+  public static final String INDEX_ALIAS = getProperty("index_alias", "dcc-variants");
+  public static final String INDEX_NAME = getProperty("index_name", INDEX_ALIAS+"-"+CURRENT_TIMESTAMP);
+  public static final int INDEX_RETENTION = parseInt(getProperty("index_retention", "2"));
+  public static final int INDEX_NUM_PARTITIONS =
+      parseInt(getProperty("index_num_partitions", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static final int INDEX_PARTITION_BLOCK_SIZE = parseInt(getProperty("index_partition_block_size", "1000"));
+  public static final long ROUTING_BIN_SIZE = parseLong(getProperty("routing_bin_size", "0"));
+  public static final boolean BULK_LOAD_TUNING = parseBoolean(getProperty("bulk_load_tuning", TRUE));
   public static final int NESTED_SCROLL_SIZE = parseInt(getProperty("nested_scroll_size", "1000"));
   public static final String NODE_ADDRESS = getProperty("node_address", "localhost");
   public static final int NODE_PORT = parseInt(getProperty("node_port", "9300"));
@@ -49,6 +58,22 @@ public class Config {
 
   public static final int BULK_NUM_THREADS = parseInt(getProperty("num_threads", "5"));
   public static final int BULK_SIZE_MB = parseInt(getProperty("bulk_size_mb", "5"));
+  public static final boolean BULK_ADAPTIVE = parseBoolean(getProperty("bulk_adaptive", TRUE));
+  public static final int BULK_MIN_SIZE_MB = parseInt(getProperty("bulk_min_size_mb", "1"));
+  public static final int BULK_MAX_SIZE_MB = parseInt(getProperty("bulk_max_size_mb", "50"));
+  public static final int BULK_MAX_NUM_THREADS = parseInt(getProperty("bulk_max_num_threads", "32"));
+  public static final long BULK_TARGET_LATENCY_MS = parseLong(getProperty("bulk_target_latency_ms", "2000"));
+  public static final int LOADER_NUM_WORKERS = parseInt(getProperty("num_workers", "1"));
+  public static final int PREFETCH_NUM_FILES = parseInt(getProperty("prefetch_num_files", "0"));
+  public static final long PREFETCH_MAX_BYTES = parseLong(getProperty("prefetch_max_bytes", Long.toString(10L * 1024 * 1024 * 1024)));
+  public static final Optional<String> COLUMNAR_DIRNAME = Optional.ofNullable(getProperty("columnar_dir"));
+  public static final int COLUMNAR_CHUNK_SIZE = parseInt(getProperty("columnar_chunk_size", "65536"));
+  public static final Optional<String> CHECKPOINT_DIRNAME = Optional.ofNullable(getProperty("checkpoint_dir"));
+  public static final int CHECKPOINT_INTERVAL = parseInt(getProperty("checkpoint_interval", "50"));
+  public static final String LOADED_FILES_MANIFEST_FILENAME = getProperty("loaded_files_manifest", "target/loadedFilesManifest.dat");
+  public static final String OFFLINE_DIRNAME = getProperty("offline_dir", "target/offline");
+  public static final Optional<String> OFFLINE_REPOSITORY_LOCATION = Optional.ofNullable(getProperty("offline_repository_location"));
+  public static final int INCREMENTAL_LOOKUP_BATCH_SIZE = parseInt(getProperty("incremental_batch_size", "500"));
   public static final boolean STORAGE_PERSIST_MODE = parseBoolean(getProperty("persist_mode", FALSE));
   public static final String STORAGE_OUTPUT_VCF_STORAGE_DIR = getProperty("vcf_dir","target/storedVCFs");
   public static final String DEFAULT_FILE_META_DATA_STORE_FILENAME = "target/allFileMetaDatas.dat";
@@ -69,6 +94,13 @@ public class Config {
   public static final boolean DEFAULT_PERSIST_MAPDB_FILE = false;
   public static final long DEFAULT_MAPDB_ALLOCATION = 2 * 1024 * 1024;
   public static final long VARIANT_MAPDB_ALLOCATION = 1024 * 1024 * 1024; //1GB
+  public static final AggregatorModes VARIANT_AGGREGATOR_MODE = parseAggregatorMode(parseInt(getProperty("aggregator_mode", "1")));
+  public static final boolean VARIANT_AGGREGATOR_GENOMIC_ORDER = parseBoolean(getProperty("genomic_order", FALSE));
+  public static final VariantIdModes VARIANT_ID_MODE = parseVariantIdMode(parseInt(getProperty("variant_id_mode", "1")));
+  public static final int VARIANT_ID_HASH_SEED = parseInt(getProperty("variant_id_seed", "0"));
+  public static final int VARIANT_AGGREGATOR_SORT_BUFFER_SIZE = parseInt(getProperty("aggregator_sort_buffer_size", "1000000"));
+  public static final int VARIANT_AGGREGATOR_NUM_SHARDS = parseInt(getProperty("aggregator_num_shards", "1"));
+  public static final long VARIANT_AGGREGATOR_BUCKET_SIZE = parseLong(getProperty("aggregator_bucket_size", "1000000"));
 
 
   public static final String INDEX_SETTINGS_JSON_FILENAME = "index.settings.json";
@@ -91,6 +123,36 @@ public class Config {
         + "\nPORTAL_API: %s"
         + "\nBULK_NUM_THREADS: %s"
         + "\nBULK_SIZE_MB: %s"
+        + "\nBULK_ADAPTIVE: %s"
+        + "\nBULK_MIN_SIZE_MB: %s"
+        + "\nBULK_MAX_SIZE_MB: %s"
+        + "\nBULK_MAX_NUM_THREADS: %s"
+        + "\nBULK_TARGET_LATENCY_MS: %s"
+        + "\nINDEX_NAME: %s"
+        + "\nINDEX_ALIAS: %s"
+        + "\nINDEX_RETENTION: %s"
+        + "\nBULK_LOAD_TUNING: %s"
+        + "\nINDEX_NUM_PARTITIONS: %s"
+        + "\nINDEX_PARTITION_BLOCK_SIZE: %s"
+        + "\nROUTING_BIN_SIZE: %s"
+        + "\nLOADER_NUM_WORKERS: %s"
+        + "\nVARIANT_AGGREGATOR_MODE: %s"
+        + "\nVARIANT_AGGREGATOR_GENOMIC_ORDER: %s"
+        + "\nVARIANT_ID_MODE: %s"
+        + "\nVARIANT_ID_HASH_SEED: %s"
+        + "\nVARIANT_AGGREGATOR_SORT_BUFFER_SIZE: %s"
+        + "\nVARIANT_AGGREGATOR_NUM_SHARDS: %s"
+        + "\nVARIANT_AGGREGATOR_BUCKET_SIZE: %s"
+        + "\nPREFETCH_NUM_FILES: %s"
+        + "\nPREFETCH_MAX_BYTES: %s"
+        + "\nCOLUMNAR_DIRNAME: %s"
+        + "\nCOLUMNAR_CHUNK_SIZE: %s"
+        + "\nCHECKPOINT_DIRNAME: %s"
+        + "\nCHECKPOINT_INTERVAL: %s"
+        + "\nLOADED_FILES_MANIFEST_FILENAME: %s"
+        + "\nOFFLINE_DIRNAME: %s"
+        + "\nOFFLINE_REPOSITORY_LOCATION: %s"
+        + "\nINCREMENTAL_LOOKUP_BATCH_SIZE: %s"
         + "\nPERSIST_MODE: %s"
         + "\nSORT_MODE: %s"
         + "\nASCENDING_MODE: %s"
@@ -112,6 +174,36 @@ public class Config {
         PORTAL_API,
         BULK_NUM_THREADS,
         BULK_SIZE_MB,
+        BULK_ADAPTIVE,
+        BULK_MIN_SIZE_MB,
+        BULK_MAX_SIZE_MB,
+        BULK_MAX_NUM_THREADS,
+        BULK_TARGET_LATENCY_MS,
+        INDEX_NAME,
+        INDEX_ALIAS,
+        INDEX_RETENTION,
+        BULK_LOAD_TUNING,
+        INDEX_NUM_PARTITIONS,
+        INDEX_PARTITION_BLOCK_SIZE,
+        ROUTING_BIN_SIZE,
+        LOADER_NUM_WORKERS,
+        VARIANT_AGGREGATOR_MODE.name() + " (" + VARIANT_AGGREGATOR_MODE.getModeId() + ")",
+        VARIANT_AGGREGATOR_GENOMIC_ORDER,
+        VARIANT_ID_MODE.name() + " (" + VARIANT_ID_MODE.getModeId() + ")",
+        VARIANT_ID_HASH_SEED,
+        VARIANT_AGGREGATOR_SORT_BUFFER_SIZE,
+        VARIANT_AGGREGATOR_NUM_SHARDS,
+        VARIANT_AGGREGATOR_BUCKET_SIZE,
+        PREFETCH_NUM_FILES,
+        PREFETCH_MAX_BYTES,
+        COLUMNAR_DIRNAME.orElse("<disabled>"),
+        COLUMNAR_CHUNK_SIZE,
+        CHECKPOINT_DIRNAME.orElse("<disabled>"),
+        CHECKPOINT_INTERVAL,
+        LOADED_FILES_MANIFEST_FILENAME,
+        OFFLINE_DIRNAME,
+        OFFLINE_REPOSITORY_LOCATION.orElse("<offline_dir>/repository"),
+        INCREMENTAL_LOOKUP_BATCH_SIZE,
         STORAGE_PERSIST_MODE,
         SORT_MODE,
         ASCENDING_MODE,
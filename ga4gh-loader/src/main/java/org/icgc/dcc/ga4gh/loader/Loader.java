@@ -18,108 +18,417 @@
 
 package org.icgc.dcc.ga4gh.loader;
 
+import com.google.common.collect.ImmutableSet;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.elasticsearch.client.Client;
+import org.icgc.dcc.ga4gh.common.IndexAliases;
+import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
 import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
 import org.icgc.dcc.ga4gh.common.types.WorkflowTypes;
 import org.icgc.dcc.ga4gh.loader.factory.Factory;
-import org.icgc.dcc.ga4gh.loader.utils.counting.CounterMonitor;
+import org.icgc.dcc.ga4gh.loader.indexing.BulkWriter;
+import org.icgc.dcc.ga4gh.loader.indexing.IndexCreator;
+import org.icgc.dcc.ga4gh.loader.indexing.Indexer;
+import org.icgc.dcc.ga4gh.loader.persistance.Checkpointer;
+import org.icgc.dcc.ga4gh.loader.persistance.FileObjectRestorer;
+import org.icgc.dcc.ga4gh.loader.persistance.LoadedFilesManifest;
+import org.icgc.dcc.ga4gh.loader.storage.Storage;
+import org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantStore;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.IdStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.IdStorageFactory2;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.IntegerIdStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.RamMapStorage;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Maps.newHashMap;
 import static java.util.Objects.isNull;
-import static org.icgc.dcc.common.core.util.Joiners.NEWLINE;
+import static org.icgc.dcc.common.core.util.stream.Collectors.toImmutableList;
 import static org.icgc.dcc.ga4gh.loader.CallSetAccumulator.createCallSetAccumulator;
+import static org.icgc.dcc.ga4gh.loader.Config.CHECKPOINT_DIRNAME;
+import static org.icgc.dcc.ga4gh.loader.Config.CHECKPOINT_INTERVAL;
+import static org.icgc.dcc.ga4gh.loader.Config.COLUMNAR_CHUNK_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.COLUMNAR_DIRNAME;
 import static org.icgc.dcc.ga4gh.loader.Config.FILTER_VARIANTS;
+import static org.icgc.dcc.ga4gh.loader.Config.INCREMENTAL_LOOKUP_BATCH_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_ALIAS;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_NAME;
+import static org.icgc.dcc.ga4gh.loader.Config.LOADED_FILES_MANIFEST_FILENAME;
+import static org.icgc.dcc.ga4gh.loader.Config.LOADER_MODE;
+import static org.icgc.dcc.ga4gh.loader.Config.LOADER_NUM_WORKERS;
+import static org.icgc.dcc.ga4gh.loader.Config.OFFLINE_DIRNAME;
+import static org.icgc.dcc.ga4gh.loader.Config.OFFLINE_REPOSITORY_LOCATION;
+import static org.icgc.dcc.ga4gh.loader.Config.PREFETCH_MAX_BYTES;
+import static org.icgc.dcc.ga4gh.loader.Config.PREFETCH_NUM_FILES;
+import static org.icgc.dcc.ga4gh.loader.Config.ROUTING_BIN_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_ID_MODE;
+import static org.icgc.dcc.ga4gh.loader.LoaderModes.INCREMENTAL;
+import static org.icgc.dcc.ga4gh.loader.LoaderModes.INDEX_ONLY_BASIC;
+import static org.icgc.dcc.ga4gh.loader.LoaderModes.OFFLINE_BUILD;
+import static org.icgc.dcc.ga4gh.loader.LoaderModes.RESTORE_OFFLINE_SNAPSHOT;
+import static org.icgc.dcc.ga4gh.loader.LoaderModes.ROLLBACK;
+import static org.icgc.dcc.ga4gh.loader.ParallelVcfProcessor.createParallelVcfProcessor;
+import static org.icgc.dcc.ga4gh.loader.VariantIdModes.SEQUENTIAL;
 import static org.icgc.dcc.ga4gh.loader.VariantFilter.createVariantFilter;
-import static org.icgc.dcc.ga4gh.loader.VcfProcessor.createVcfProcessor;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.buildBulkWriter;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.buildDefaultPortalMetadataDaoFactory;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.buildDocumentWriter;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.buildIndexer2;
+import static org.icgc.dcc.ga4gh.loader.indexing.IncrementalVariantIndexer.createIncrementalVariantIndexer;
+import static org.icgc.dcc.ga4gh.loader.indexing.IndexStateReader.createIndexStateReader;
+import static org.icgc.dcc.ga4gh.loader.indexing.OfflineIndexBuilder.createOfflineIndexBuilder;
+import static org.icgc.dcc.ga4gh.loader.indexing.OfflineIndexBuilder.getRepositoryPath;
+import static org.icgc.dcc.ga4gh.loader.indexing.OfflineSnapshotRestorer.createOfflineSnapshotRestorer;
+import static org.icgc.dcc.ga4gh.loader.persistance.LoadedFilesManifest.createLoadedFilesManifest;
+import static org.icgc.dcc.ga4gh.loader.persistance.Checkpointer.createCheckpointer;
+import static org.icgc.dcc.ga4gh.loader.persistance.Checkpointer.createDisabledCheckpointer;
 import static org.icgc.dcc.ga4gh.loader.portal.PortalConsensusCollabVcfFileQueryCreator.createPortalConsensusCollabVcfFileQueryCreator;
+import static org.icgc.dcc.ga4gh.loader.storage.impl.PrefetchingStorage.createPrefetchingStorage;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantStore.createColumnarVariantStore;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.RamMapStorage.newRamMapStorage;
 
 @Slf4j
 public class Loader {
 
+  private static final String OFFLINE_MANIFEST_FILENAME = "loadedFilesManifest.dat";
+
   private static boolean skipPortatMetadata(PortalMetadata portalMetadata){
     val workflowType = WorkflowTypes.parseMatch(portalMetadata.getPortalFilename().getWorkflow(), false);
     val out = workflowType == WorkflowTypes.CONSENSUS || portalMetadata.getFileSize() > 7000000 ;
     return false;
   }
 
-  public static void main(String[] args) throws IOException {
-    val variantFilter = createVariantFilter(!FILTER_VARIANTS);
-    val storage = Factory.buildStorageFactory().getStorage();
-    val localFileRestorerFactory = Factory.buildFileObjectRestorerFactory();
-    val query = createPortalConsensusCollabVcfFileQueryCreator(); //createPortalAllCollabVcfFileQueryCreator();
-    val portalMetadataDaoFactory = buildDefaultPortalMetadataDaoFactory(localFileRestorerFactory, query);
-    val portalMetadataDao = portalMetadataDaoFactory.getPortalMetadataDao();
+  private static Storage buildProcessingStorage(Storage storage, List<PortalMetadata> portalMetadatas){
+    if (PREFETCH_NUM_FILES > 0){
+      val prefetchingStorage = createPrefetchingStorage(storage, portalMetadatas, PREFETCH_NUM_FILES, PREFETCH_MAX_BYTES);
+      prefetchingStorage.start();
+      return prefetchingStorage;
+    }
+    return storage;
+  }
 
-    val callSetAccumulator = createCallSetAccumulator(newHashMap(), newHashMap());
-    val variantSetIdStorage = IntegerIdStorage.<EsVariantSet>createIntegerIdStorage(newRamMapStorage(),0);
+  private static Checkpointer buildCheckpointer(String indexName, VariantAggregator variantAggregator,
+      IdStorage<EsVariantSet, Integer> variantSetIdStorage, CallSetAccumulator callSetAccumulator){
+    return CHECKPOINT_DIRNAME
+        .map(x -> createCheckpointer(Paths.get(x), CHECKPOINT_INTERVAL, indexName, LOADER_MODE, variantAggregator,
+            variantSetIdStorage, callSetAccumulator))
+        .orElseGet(() -> createDisabledCheckpointer(variantAggregator, variantSetIdStorage, callSetAccumulator));
+  }
 
-    val variantAggregator = IdStorageFactory2.buildVariantAggregator();
+  private static Optional<ColumnarVariantStore> buildColumnarVariantStore(){
+    return COLUMNAR_DIRNAME.map(x -> createColumnarVariantStore(Paths.get(x), COLUMNAR_CHUNK_SIZE));
+  }
 
-    val variantCounterMonitor = CounterMonitor.createCounterMonitor("variantCounterMonitor", 500000);
-    val portalMetadatas =  portalMetadataDao.findAll();
+  /**
+   * Points the serving alias back at the previous versioned index, without loading anything
+   */
+  private static void rollbackAlias() {
+    try (val client = Factory.newClient()) {
+      val restoredIndexName = IndexAliases.rollback(client, INDEX_ALIAS);
+      log.info("Rolled back alias [{}] to index [{}]", INDEX_ALIAS, restoredIndexName);
+    }
+  }
 
-    long numVariants = 0;
-    int count = 0;
-    val total = portalMetadatas.size();
-    for (val portalMetadata : portalMetadatas) {
+  /**
+   * Rebuilds the index from a previously written columnar variant store, without downloading or parsing VCFs
+   */
+  private static void replayColumnarVariantStore() throws IOException {
+    val columnarVariantStore = buildColumnarVariantStore()
+        .orElseThrow(() -> new IllegalStateException("The columnar_dir must be set for the loader mode " + LOADER_MODE));
+    try (val variantSetMapStorage = columnarVariantStore.restoreVariantSets();
+        val callSetMapStorage = columnarVariantStore.restoreCallSets();
+        val reader = columnarVariantStore.createReader()) {
+      log.info("Replaying {} variants from [{}]", reader.getNumVariants(), columnarVariantStore.getVariantsPath());
+      index(variantSetMapStorage, callSetMapStorage, reader.streamVariantIdContext(), false, INDEX_NAME);
+    }
+  }
 
-      if (skipPortatMetadata(portalMetadata)) {
-        continue;
-      }
+  /**
+   * Reads the loaded files manifest written by the previous load
+   */
+  @SneakyThrows
+  private static LoadedFilesManifest readLoadedFilesManifest(){
+    val restorer = FileObjectRestorer.<LoadedFilesManifest>newFileObjectRestorer(Paths.get(LOADED_FILES_MANIFEST_FILENAME));
+    checkState(restorer.isPersisted(), "The loaded files manifest [%s] DNE. A full load must be run before an incremental one",
+        LOADED_FILES_MANIFEST_FILENAME);
+    return restorer.restore();
+  }
 
-      try {
+  /**
+   * An incremental load merges into the index currently served through the alias, which must be the index the
+   * loaded files manifest was written for
+   */
+  private static String resolveIncrementalIndexName(LoadedFilesManifest manifest){
+    try (val client = Factory.newClient()) {
+      val indexNames = IndexAliases.resolveIndices(client, INDEX_ALIAS);
+      checkState(indexNames.size() == 1, "The index_alias [%s] must resolve to exactly one index for the loader mode %s, "
+          + "but resolves to %s", INDEX_ALIAS, LOADER_MODE, indexNames);
+      val indexName = indexNames.iterator().next();
+      checkState(manifest.getIndexName().equals(indexName),
+          "The loaded files manifest [%s] is for the index [%s], but the index_alias [%s] points at [%s]",
+          LOADED_FILES_MANIFEST_FILENAME, manifest.getIndexName(), INDEX_ALIAS, indexName);
+      return indexName;
+    }
+  }
 
-        log.info("Downloading [{}/{}]: {}", ++count, total, portalMetadata.getPortalFilename().getFilename());
-        val vcfFile = storage.getFile(portalMetadata);
-        val vcfProcessor = createVcfProcessor(variantAggregator, variantSetIdStorage, callSetAccumulator,
-             variantCounterMonitor, variantFilter);
-        variantCounterMonitor.start();
-        vcfProcessor.process(portalMetadata, vcfFile);
+  private static void storeLoadedFilesManifest(LoadedFilesManifest manifest, String filename) throws IOException {
+    FileObjectRestorer.<LoadedFilesManifest>newFileObjectRestorer(Paths.get(filename)).store(manifest);
+    log.info("Stored {} loaded files for the index [{}] to [{}]", manifest.getObjectIds().size(), manifest.getIndexName(),
+        filename);
+  }
 
-      } catch (Exception e) {
-        log.error("Exception [{}]: {}\n{}", e.getClass().getName(), e.getMessage(), NEWLINE.join(e.getStackTrace()));
+  /**
+   * The manifest of an offline build only becomes the loaded files manifest once its snapshot is restored
+   */
+  private static String getOfflineManifestFilename(){
+    return Paths.get(OFFLINE_DIRNAME, OFFLINE_MANIFEST_FILENAME).toString();
+  }
 
-      } finally {
-        variantCounterMonitor.stop();
-        variantCounterMonitor.displaySummary();
-      }
+  /**
+   * Restores the index built by the loader mode OFFLINE_BUILD into the cluster, and moves the alias onto it
+   */
+  @SneakyThrows
+  private static void restoreOfflineSnapshot(){
+    val offlineManifestFilename = getOfflineManifestFilename();
+    val restorer = FileObjectRestorer.<LoadedFilesManifest>newFileObjectRestorer(Paths.get(offlineManifestFilename));
+    checkState(restorer.isPersisted(), "The offline manifest [%s] DNE. An offline build must be run before its restore",
+        offlineManifestFilename);
+    val manifest = restorer.restore();
+    val indexName = manifest.getIndexName();
+    val repositoryLocation = OFFLINE_REPOSITORY_LOCATION
+        .orElseGet(() -> getRepositoryPath(Paths.get(OFFLINE_DIRNAME)).toString());
+    try (val client = Factory.newClient()) {
+      createOfflineSnapshotRestorer(client, repositoryLocation).restore(indexName);
+      val indexCreator = new IndexCreator(Factory.buildIndexCreatorContext(client, indexName));
+      indexCreator.restoreProductionSettings();
+      indexCreator.waitForGreen();
+      indexCreator.swapAlias();
+    }
+    storeLoadedFilesManifest(manifest, LOADED_FILES_MANIFEST_FILENAME);
+  }
 
+  /**
+   * Seeds the variantSet ids and the callSets from the existing index, so that new ones get ids after the existing ones
+   */
+  private static IntegerIdStorage<EsVariantSet> seedFromExistingIndex(CallSetAccumulator callSetAccumulator,
+      String indexName){
+    try (val client = Factory.newClient()) {
+      val reader = createIndexStateReader(client, indexName);
+      checkState(reader.isIndexExisting(), "The index [%s] must exist for the loader mode %s", indexName, LOADER_MODE);
+      val routingBinSize = reader.readRoutingBinSize();
+      checkState(routingBinSize == ROUTING_BIN_SIZE,
+          "The index [%s] was routed with the bin size %s, but the routing_bin_size is %s", indexName, routingBinSize,
+          ROUTING_BIN_SIZE);
+      val variantSets = reader.readVariantSets();
+      val variantSetMapStorage = RamMapStorage.<EsVariantSet, Integer>newRamMapStorage();
+      variantSetMapStorage.getMap().putAll(variantSets);
+      val nextVariantSetId = variantSets.values().stream().mapToInt(x -> x + 1).max().orElse(0);
+      reader.readCallSets()
+          .forEach((id, callSet) -> callSetAccumulator.addExistingCallSet(callSet.getName(), id, callSet.getVariantSetIds()));
+      return IntegerIdStorage.createIntegerIdStorage(variantSetMapStorage, nextVariantSetId);
     }
-    log.info("NumVariants: {}", numVariants);
-    val callSetMapStorage = callSetAccumulator.getMapStorage();
+  }
+
+  private static void indexVariantsIncrementally(Client client, BulkWriter bulkWriter,
+      Stream<VariantIdContext<Long>> variantIdContextStream, String indexName){
+    // Content hash ids are the same in every load, only sequential ids have to continue from the existing variants
+    val firstNewVariantId = VARIANT_ID_MODE == SEQUENTIAL
+        ? OptionalLong.of(createIndexStateReader(client, indexName).readNextVariantId()) : OptionalLong.empty();
+    log.info("Merging into the existing index [{}] with {} variant ids", indexName, VARIANT_ID_MODE);
+    val incrementalIndexer = createIncrementalVariantIndexer(client, bulkWriter, indexName, firstNewVariantId,
+        INCREMENTAL_LOOKUP_BATCH_SIZE);
+    incrementalIndexer.index(variantIdContextStream);
+  }
+
+  private static boolean index(MapStorage<EsVariantSet, Integer> variantSetMapStorage,
+      MapStorage<EsCallSet, Integer> callSetMapStorage, Stream<VariantIdContext<Long>> variantIdContextStream,
+      boolean incremental, String indexName){
+    try (val client = Factory.newClient()) {
+      val ctx = Factory.buildIndexCreatorContext(client, indexName);
+      final Indexer indexer2;
 
-    try (val client = Factory.newClient();
-        val writer = buildDocumentWriter(client)) {
+      // Writers are closed before finalizing, so every document has been sent when the index is merged
+      try (val writer = buildDocumentWriter(client, indexName);
+          val bulkWriter = buildBulkWriter(client)) {
 
-      val ctx = Factory.buildIndexCreatorContext(client);
-      val indexer2 = buildIndexer2(client, writer, ctx);
-      indexer2.prepareIndex();
+        indexer2 = buildIndexer2(client, writer, bulkWriter, ctx);
+        if (!incremental){
+          indexer2.prepareIndex();
+        }
 
-      log.info("Indexing VariantSets ...");
-      indexer2.indexVariantSets(variantSetIdStorage);
+        log.info("Indexing VariantSets ...");
+        indexer2.indexVariantSets(variantSetMapStorage);
 
-      log.info("Indexing CallSets ...");
-      indexer2.indexCallSets(callSetMapStorage);
+        log.info("Indexing CallSets ...");
+        indexer2.indexCallSets(callSetMapStorage);
 
-      log.info("Indexing Variants and Calls...");
-      val variantIdContextStream = variantAggregator.streamVariantIdContext();
-      indexer2.indexVariants(variantIdContextStream);
+        log.info("Indexing Variants and Calls...");
+        if (incremental){
+          indexVariantsIncrementally(client, bulkWriter, variantIdContextStream, indexName);
+        } else {
+          indexer2.indexVariants(variantIdContextStream);
+        }
+      }
+
+      // An incremental load writes into the live index, which is already aliased and keeps its production settings
+      if (!incremental){
+        log.info("Finalizing index ...");
+        indexer2.finalizeIndex();
+      }
 
       log.info("Indexing COMPLETE");
+      return true;
+
+    } catch (Exception e) {
+      log.error("Exception running: ", e);
+      return false;
+    }
+  }
+
+  /**
+   * Builds the index on a node inside the loader instead of on the cluster, and snapshots it for the loader mode
+   * RESTORE_OFFLINE_SNAPSHOT
+   */
+  private static boolean buildOfflineIndex(MapStorage<EsVariantSet, Integer> variantSetMapStorage,
+      MapStorage<EsCallSet, Integer> callSetMapStorage, Stream<VariantIdContext<Long>> variantIdContextStream){
+    try (val offlineIndexBuilder = createOfflineIndexBuilder(Paths.get(OFFLINE_DIRNAME))) {
+      val client = offlineIndexBuilder.start();
+      val ctx = Factory.buildIndexCreatorContext(client, INDEX_NAME);
+      final Indexer indexer2;
+
+      try (val writer = buildDocumentWriter(client, INDEX_NAME);
+          val bulkWriter = buildBulkWriter(client)) {
+
+        indexer2 = buildIndexer2(client, writer, bulkWriter, ctx);
+        indexer2.prepareIndex();
+
+        log.info("Indexing VariantSets ...");
+        indexer2.indexVariantSets(variantSetMapStorage);
+
+        log.info("Indexing CallSets ...");
+        indexer2.indexCallSets(callSetMapStorage);
+
+        log.info("Indexing Variants and Calls...");
+        indexer2.indexVariants(variantIdContextStream);
+      }
+
+      // A single node can not allocate the replicas nor hold the alias, both are done when the snapshot is restored
+      log.info("Merging index ...");
+      indexer2.optimize();
+      offlineIndexBuilder.snapshot(INDEX_NAME);
+
+      log.info("Offline build COMPLETE, restore it with the loader mode {}", RESTORE_OFFLINE_SNAPSHOT);
+      return true;
 
     } catch (Exception e) {
       log.error("Exception running: ", e);
+      return false;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (LOADER_MODE == ROLLBACK){
+      rollbackAlias();
+      return;
+    }
+    if (LOADER_MODE == INDEX_ONLY_BASIC){
+      replayColumnarVariantStore();
+      return;
+    }
+    if (LOADER_MODE == RESTORE_OFFLINE_SNAPSHOT){
+      restoreOfflineSnapshot();
+      return;
+    }
+    val variantFilter = createVariantFilter(!FILTER_VARIANTS);
+    val storage = Factory.buildStorageFactory().getStorage();
+    val localFileRestorerFactory = Factory.buildFileObjectRestorerFactory();
+    val query = createPortalConsensusCollabVcfFileQueryCreator(); //createPortalAllCollabVcfFileQueryCreator();
+    val portalMetadataDaoFactory = buildDefaultPortalMetadataDaoFactory(localFileRestorerFactory, query);
+    val portalMetadataDao = portalMetadataDaoFactory.getPortalMetadataDao();
+
+    val isIncremental = LOADER_MODE == INCREMENTAL;
+    val isOfflineBuild = LOADER_MODE == OFFLINE_BUILD;
+    val loadedFilesManifest = isIncremental ? Optional.of(readLoadedFilesManifest()) : Optional.<LoadedFilesManifest>empty();
+    val loadedObjectIds = loadedFilesManifest.map(LoadedFilesManifest::getObjectIds).orElse(ImmutableSet.of());
+    val indexName = loadedFilesManifest.map(Loader::resolveIncrementalIndexName).orElse(INDEX_NAME);
+
+    val callSetAccumulator = createCallSetAccumulator(newHashMap(), newHashMap());
+    val variantSetIdStorage = isIncremental ? seedFromExistingIndex(callSetAccumulator, indexName)
+        : IntegerIdStorage.<EsVariantSet>createIntegerIdStorage(newRamMapStorage(),0);
+
+    val variantAggregator = IdStorageFactory2.buildVariantAggregator();
+
+    val checkpointer = buildCheckpointer(indexName, variantAggregator, variantSetIdStorage, callSetAccumulator);
+    val completedObjectIds = checkpointer.restore();
+
+    val portalMetadatas = portalMetadataDao.findAll().stream()
+        .filter(x -> !skipPortatMetadata(x))
+        .filter(x -> !loadedObjectIds.contains(x.getObjectId()))
+        .filter(x -> !completedObjectIds.contains(x.getObjectId()))
+        .collect(toImmutableList());
+    if (isIncremental){
+      log.info("Incremental load: {} files already loaded into [{}], {} new files", loadedObjectIds.size(), indexName,
+          portalMetadatas.size());
+    }
+    if (!completedObjectIds.isEmpty()){
+      log.info("Resuming from checkpoint: skipping {} completed files, {} remaining", completedObjectIds.size(),
+          portalMetadatas.size());
+    }
+
+    val processingStorage = buildProcessingStorage(storage, portalMetadatas);
+    try {
+      val parallelVcfProcessor = createParallelVcfProcessor(processingStorage, variantAggregator, variantSetIdStorage,
+          callSetAccumulator, variantFilter, checkpointer, LOADER_NUM_WORKERS);
+      parallelVcfProcessor.process(portalMetadatas);
+    } finally {
+      if (processingStorage instanceof Closeable){
+        ((Closeable) processingStorage).close();
+      }
+    }
+
+    val callSetMapStorage = callSetAccumulator.getMapStorage();
+    // The columnar variant store must hold every variant of the index, so it is not written for a delta
+    if (isIncremental && COLUMNAR_DIRNAME.isPresent()){
+      log.warn("The columnar_dir [{}] is ignored for the loader mode {}", COLUMNAR_DIRNAME.get(), LOADER_MODE);
+    }
+    val columnarVariantStore = isIncremental ? Optional.<ColumnarVariantStore>empty() : buildColumnarVariantStore();
+    columnarVariantStore.ifPresent(x -> {
+      x.storeVariantSets(variantSetIdStorage);
+      x.storeCallSets(callSetMapStorage);
+    });
+
+    // Tee the variants into the columnar variant store while indexing, so the index can be rebuilt later
+    boolean success;
+    try (val columnarWriter = columnarVariantStore.map(ColumnarVariantStore::createWriter).orElse(null);
+        val variantIdContextStream = variantAggregator.streamVariantIdContext()) {
+      val stream = isNull(columnarWriter) ? variantIdContextStream : variantIdContextStream.peek(columnarWriter::write);
+      success = isOfflineBuild ? buildOfflineIndex(variantSetIdStorage, callSetMapStorage, stream)
+          : index(variantSetIdStorage, callSetMapStorage, stream, isIncremental, indexName);
+      if (!success && !isNull(columnarWriter)){
+        columnarWriter.abort();
+      }
+    }
+
+    if (success){
+      val newObjectIds = checkpointer.getCompletedObjectIds();
+      val manifest = loadedFilesManifest
+          .map(x -> x.merge(newObjectIds))
+          .orElseGet(() -> createLoadedFilesManifest(INDEX_NAME, newObjectIds));
+      storeLoadedFilesManifest(manifest, isOfflineBuild ? getOfflineManifestFilename() : LOADED_FILES_MANIFEST_FILENAME);
+      checkpointer.delete();
     }
 
     closeInstance(callSetMapStorage);
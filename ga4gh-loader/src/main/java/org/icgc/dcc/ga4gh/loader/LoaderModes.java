@@ -23,7 +23,8 @@ import lombok.val;
 import static org.icgc.dcc.common.core.util.stream.Streams.stream;
 
 public enum LoaderModes {
-  AGGREGATE_ONLY(1), INDEX_ONLY_BASIC(2), FULLY_LOAD(3), INDEX_ONLY_SPECIAL(4);
+  AGGREGATE_ONLY(1), INDEX_ONLY_BASIC(2), FULLY_LOAD(3), INDEX_ONLY_SPECIAL(4), INCREMENTAL(5), ROLLBACK(6), OFFLINE_BUILD(7),
+  RESTORE_OFFLINE_SNAPSHOT(8);
 
   private int mode;
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
+import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
+import org.icgc.dcc.ga4gh.loader.persistance.Checkpointer;
+import org.icgc.dcc.ga4gh.loader.storage.Storage;
+import org.icgc.dcc.ga4gh.loader.utils.counting.CounterMonitor;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.IdStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+
+import java.io.File;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.icgc.dcc.common.core.util.Joiners.NEWLINE;
+import static org.icgc.dcc.ga4gh.loader.Config.MONITOR_INTERVAL_COUNT;
+import static org.icgc.dcc.ga4gh.loader.VcfProcessor.createVcfProcessor;
+
+/**
+ * Downloads and processes VCF files using a fixed number of workers. Each worker pulls the next
+ * PortalMetadata from a shared queue, so at most numWorkers files are in flight at any time. Every worker
+ * parses with its own VCFFileReader and reports its own rates, while all workers feed the same thread-safe
+ * VariantAggregator, CallSetAccumulator and variantSet IdStorage. Files are processed through the Checkpointer,
+ * so the shared state can be snapshot between files.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ParallelVcfProcessor {
+
+  private static final String WORKER_NAME_FORMAT = "vcf-worker-%d";
+
+  @NonNull private final Storage storage;
+  @NonNull private final VariantAggregator variantAggregator;
+  @NonNull private final IdStorage<EsVariantSet, Integer> variantSetIdStorage;
+  @NonNull private final CallSetAccumulator callSetAccumulator;
+  @NonNull private final VariantFilter variantFilter;
+  @NonNull private final Checkpointer checkpointer;
+  private final int numWorkers;
+
+  @SneakyThrows
+  public void process(@NonNull List<PortalMetadata> portalMetadatas) {
+    checkArgument(numWorkers > 0, "The number of workers [%s] must be greater than 0", numWorkers);
+    val queue = new ConcurrentLinkedQueue<PortalMetadata>(portalMetadatas);
+    val count = new AtomicInteger(0);
+    val total = portalMetadatas.size();
+
+    log.info("Processing {} VCF files with {} workers", total, numWorkers);
+    val threadFactory = new ThreadFactoryBuilder().setNameFormat(WORKER_NAME_FORMAT).build();
+    val executor = Executors.newFixedThreadPool(numWorkers, threadFactory);
+    val futures = Lists.<Future<?>>newArrayList();
+    for (int i = 0; i < numWorkers; i++) {
+      val monitor = CounterMonitor.createCounterMonitor("variantCounterMonitor-" + i, MONITOR_INTERVAL_COUNT);
+      futures.add(executor.submit(() -> runWorker(queue, monitor, count, total)));
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, DAYS);
+    awaitWorkers(futures);
+    checkpointer.checkpoint();
+  }
+
+  /*
+   * A worker that dies takes its remaining share of the queue with it, so the load must not report success
+   */
+  private static void awaitWorkers(List<Future<?>> futures) throws InterruptedException {
+    for (val future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        throw propagate(e.getCause());
+      }
+    }
+  }
+
+  private void runWorker(Queue<PortalMetadata> queue, CounterMonitor monitor, AtomicInteger count, int total) {
+    for (PortalMetadata next = queue.poll(); next != null; next = queue.poll()) {
+      val portalMetadata = next;
+      val fileNum = count.incrementAndGet();
+      checkpointer.process(portalMetadata, () -> processFile(portalMetadata, monitor, fileNum, total));
+    }
+  }
+
+  private boolean processFile(PortalMetadata portalMetadata, CounterMonitor monitor, int fileNum, int total) {
+    File vcfFile = null;
+    try {
+      log.info("Downloading [{}/{}]: {}", fileNum, total, portalMetadata.getPortalFilename().getFilename());
+      vcfFile = storage.getFile(portalMetadata);
+      val vcfProcessor = createVcfProcessor(variantAggregator, variantSetIdStorage, callSetAccumulator,
+          monitor, variantFilter);
+      monitor.start();
+      vcfProcessor.process(portalMetadata, vcfFile);
+      return true;
+
+    } catch (Exception e) {
+      log.error("Exception [{}]: {}\n{}", e.getClass().getName(), e.getMessage(), NEWLINE.join(e.getStackTrace()));
+      return false;
+
+    } finally {
+      monitor.stop();
+      monitor.displaySummary();
+      if (vcfFile != null) {
+        storage.releaseFile(portalMetadata, vcfFile);
+      }
+    }
+  }
+
+  public static ParallelVcfProcessor createParallelVcfProcessor(Storage storage,
+      VariantAggregator variantAggregator,
+      IdStorage<EsVariantSet, Integer> variantSetIdStorage,
+      CallSetAccumulator callSetAccumulator, VariantFilter variantFilter, Checkpointer checkpointer, int numWorkers) {
+    return new ParallelVcfProcessor(storage, variantAggregator, variantSetIdStorage, callSetAccumulator,
+        variantFilter, checkpointer, numWorkers);
+  }
+
+}
@@ -18,22 +18,28 @@
 
 package org.icgc.dcc.ga4gh.loader;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import htsjdk.variant.variantcontext.VariantContext;
+import lombok.Cleanup;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
-import lombok.experimental.NonFinal;
 import lombok.val;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
 import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
 import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall.EsConsensusCallBuilder;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
 import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
 import org.icgc.dcc.ga4gh.loader.utils.counting.CounterMonitor;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.IdStorage;
-import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -58,27 +64,16 @@ public class VcfProcessor {
   @NonNull private final CounterMonitor callCounterMonitor;
   @NonNull private final VariantFilter variantFilter;
 
-  /**
-   * State
-   */
-  @NonFinal private int callSetId = 0;
-
   private EsConsensusCallBuilder createEsConsensusCallBuilder(PortalMetadata portalMetadata, int callSetId){
     return EsConsensusCall.builder()
         .callSetId(callSetId)
         .callSetName(portalMetadata.getSampleId());
   }
 
-  private void processVariant(PortalMetadata portalMetadata, EsConsensusCallBuilder esCallBuilder, VariantContext variantContext){
-    val esCall = convertConsensus(portalMetadata, esCallBuilder,variantContext);
-    val esVariant = ES_VARIANT_CONVERTER_JSON.convertFromVariantContext(variantContext);
-    variantAggregator.add(esVariant, esCall);
-    callCounterMonitor.preIncr();
-  }
-
-
-  private EsConsensusCall convertConsensus(PortalMetadata portalMetadata, EsConsensusCallBuilder esConsensusCallBuilder,VariantContext variantContext){
-    val callSetName = extractCallSetName(portalMetadata);
+  /**
+   * Converts a variant without touching any shared state, the variant sets of its callers are resolved later
+   */
+  private ParsedCall parseVariant(VariantContext variantContext){
     //Extract callers from Info attribute
     val info = variantContext.getCommonInfo();
     checkState(info.hasAttribute(CALLERS), "[%s] attribute not found in consensus call", CALLERS);
@@ -89,26 +84,21 @@ public class VcfProcessor {
     if (info.hasAttribute(NUM_CALLERS)){
       info.removeAttribute(NUM_CALLERS);
     }
+    val esVariant = ES_VARIANT_CONVERTER_JSON.convertFromVariantContext(variantContext);
+    return new ParsedCall(esVariant, info.getAttributes(), callers);
+  }
 
-    //Build variantSets
+  /**
+   * Adds the variantSets of the callers to the idStorage, so that any nonexisting ones are assigned an ID, and
+   * collects their ids for the callSet of the file
+   */
+  private ImmutableList<Integer> registerVariantSets(PortalMetadata portalMetadata, String callSetName,
+      Set<String> callers){
     val variantSets = buildConsensusEsVariantSet(portalMetadata, callers);
-
-    //Add variantSets so that any nonexisting variantSets are added to the idStorage so they are assigned an ID
     variantSets.forEach(variantSetIdStorage::add);
-
-    //Create list of variantSetIds (integers)
-    val variantSetIdList =  variantSets.stream().map(variantSetIdStorage::getId).collect(toImmutableList());
-
-    // Add collect variantSetIds from all variants in this file, which will later be used for callSet generation
-    callSetAccumulator.addVariantSetIds(callSetName,variantSetIdList);
-    val callSetId = callSetAccumulator.getId(callSetName);
-
-    // Build ConsensusCall
-    return esConsensusCallBuilder
-        .info(info.getAttributes())
-        .variantSetIds(variantSetIdList)
-        .callSetId(callSetId)
-        .build();
+    val variantSetIdList = variantSets.stream().map(variantSetIdStorage::getId).collect(toImmutableList());
+    callSetAccumulator.addVariantSetIds(callSetName, variantSetIdList);
+    return variantSetIdList;
   }
 
   private Set<EsVariantSet> buildConsensusEsVariantSet(PortalMetadata portalMetadata, Set<String> callers){
@@ -119,16 +109,56 @@ public class VcfProcessor {
         .collect(toImmutableSet());
   }
 
+  /**
+   * Parses the whole file before registering its variantSets and callSet, and before adding its calls to the
+   * VariantAggregator. A file that fails partway therefore leaves no variantSets, callSet or calls behind, and can
+   * be retried from a checkpoint without duplicating any of them. Until then the parsed variants of the file are
+   * held in memory, one file per worker; the variantSet ids are resolved once per distinct set of callers and
+   * shared by the calls.
+   */
   public void process(PortalMetadata portalMetadata, File vcfFile){
-    //Open file, and process each variant, to create variantSets and Calls
-    val vcfFileReader = newDefaultVCFFileReader(vcfFile);
-    val esConsensusCallBuilder = createEsConsensusCallBuilder(portalMetadata, callSetId);
+    val parsedCalls = parse(vcfFile);
+    if (parsedCalls.isEmpty()){
+      return;
+    }
+
+    val callSetName = extractCallSetName(portalMetadata);
+    val variantSetIdsByCallers = Maps.<Set<String>, ImmutableList<Integer>>newHashMap();
+    for (val parsedCall : parsedCalls){
+      variantSetIdsByCallers.computeIfAbsent(parsedCall.getCallers(),
+          callers -> registerVariantSets(portalMetadata, callSetName, callers));
+    }
+
+    val esConsensusCallBuilder = createEsConsensusCallBuilder(portalMetadata, callSetAccumulator.getId(callSetName));
+    for (val parsedCall : parsedCalls){
+      val esCall = esConsensusCallBuilder
+          .info(parsedCall.getInfo())
+          .variantSetIds(variantSetIdsByCallers.get(parsedCall.getCallers()))
+          .build();
+      variantAggregator.add(parsedCall.getEsVariant(), esCall);
+      callCounterMonitor.preIncr();
+    }
+  }
+
+  private List<ParsedCall> parse(File vcfFile){
+    //Open file, and convert each variant, without assigning any ids yet
+    @Cleanup val vcfFileReader = newDefaultVCFFileReader(vcfFile);
+    val parsedCalls = Lists.<ParsedCall>newArrayList();
     stream(vcfFileReader)
         .filter(variantFilter::passedFilter)
-        .forEach(v -> processVariant(portalMetadata, esConsensusCallBuilder, v));
+        .map(this::parseVariant)
+        .forEach(parsedCalls::add);
+    return parsedCalls;
   }
 
+  @Value
+  private static class ParsedCall {
+
+    @NonNull private final EsVariant esVariant;
+    @NonNull private final Map<String, Object> info;
+    @NonNull private final Set<String> callers;
 
+  }
 
   public static VcfProcessor createVcfProcessor(VariantAggregator variantAggregator,
       IdStorage<EsVariantSet, Integer> variantSetIdStorage,
@@ -32,6 +32,7 @@ import org.icgc.dcc.ga4gh.common.ObjectNodeConverter;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
+import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSmileEncoder;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
@@ -47,13 +48,15 @@ import org.icgc.dcc.ga4gh.loader.Config;
 import org.icgc.dcc.ga4gh.loader.callconverter.CallConverterStrategyMux;
 import org.icgc.dcc.ga4gh.loader.dao.portal.PortalMetadataDao;
 import org.icgc.dcc.ga4gh.loader.dao.portal.PortalMetadataDaoFactory;
+import org.icgc.dcc.ga4gh.loader.indexing.BulkWriter;
 import org.icgc.dcc.ga4gh.loader.indexing.IndexCreatorContext;
 import org.icgc.dcc.ga4gh.loader.indexing.Indexer;
+import org.icgc.dcc.ga4gh.loader.indexing.VariantRouting;
 import org.icgc.dcc.ga4gh.loader.persistance.FileObjectRestorerFactory;
 import org.icgc.dcc.ga4gh.loader.portal.Portal;
 import org.icgc.dcc.ga4gh.loader.storage.StorageFactory;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.context.impl.IdStorageContextImpl.IdStorageContextImplSerializer;
-import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorageFactory;
 import org.mapdb.Serializer;
 
@@ -67,24 +70,39 @@ import java.util.Properties;
 import static com.google.common.io.Resources.getResource;
 import static lombok.AccessLevel.PRIVATE;
 import static org.icgc.dcc.ga4gh.common.TypeNames.CALL_SET;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSmileEncoder.createEsVariantCallPairSmileEncoder;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT_SET;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VCF_HEADER;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_ADAPTIVE;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_LOAD_TUNING;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_MAX_NUM_THREADS;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_MAX_SIZE_MB;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_MIN_SIZE_MB;
 import static org.icgc.dcc.ga4gh.loader.Config.BULK_NUM_THREADS;
 import static org.icgc.dcc.ga4gh.loader.Config.BULK_SIZE_MB;
+import static org.icgc.dcc.ga4gh.loader.Config.BULK_TARGET_LATENCY_MS;
 import static org.icgc.dcc.ga4gh.loader.Config.DEFAULT_MAPDB_ALLOCATION;
 import static org.icgc.dcc.ga4gh.loader.Config.DEFAULT_MAPPINGS_DIRNAME;
 import static org.icgc.dcc.ga4gh.loader.Config.DEFAULT_MAPPING_JSON_EXTENSION;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_ALIAS;
 import static org.icgc.dcc.ga4gh.loader.Config.INDEX_NAME;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_NUM_PARTITIONS;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_PARTITION_BLOCK_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.INDEX_RETENTION;
 import static org.icgc.dcc.ga4gh.loader.Config.INDEX_SETTINGS_JSON_FILENAME;
 import static org.icgc.dcc.ga4gh.loader.Config.PERSISTED_DIRPATH;
+import static org.icgc.dcc.ga4gh.loader.Config.ROUTING_BIN_SIZE;
 import static org.icgc.dcc.ga4gh.loader.Config.STORAGE_OUTPUT_VCF_STORAGE_DIR;
 import static org.icgc.dcc.ga4gh.loader.Config.TOKEN;
 import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_MAPDB_ALLOCATION;
 import static org.icgc.dcc.ga4gh.loader.factory.impl.IntegerIdStorageFactory.createIntegerIdStorageFactory;
+import static org.icgc.dcc.ga4gh.loader.indexing.AdaptiveBulkWriter.createAdaptiveBulkWriter;
+import static org.icgc.dcc.ga4gh.loader.indexing.BulkProcessorWriter.createBulkProcessorWriter;
+import static org.icgc.dcc.ga4gh.loader.indexing.VariantRouting.createVariantRouting;
 import static org.icgc.dcc.ga4gh.loader.factory.impl.LongIdStorageFactory.createLongIdStorageFactory;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.context.impl.IdStorageContextImpl.IdStorageContextImplSerializer.createIdStorageContextSerializer;
-import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantAggregator.createVariantAggregator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.MapVariantAggregator.createMapVariantAggregator;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorageFactory.createMapStorageFactory;
 import static org.mapdb.Serializer.INTEGER;
 import static org.mapdb.Serializer.LONG;
@@ -104,6 +122,8 @@ public class Factory {
       .variantJsonObjectNodeConverter(ES_VARIANT_CONVERTER_JSON)
       .variantSearchHitConverter(ES_VARIANT_CONVERTER_JSON)
       .build();
+  public static final EsVariantCallPairSmileEncoder ES_VARIANT_CALL_PAIR_SMILE_ENCODER = createEsVariantCallPairSmileEncoder();
+  public static final VariantRouting VARIANT_ROUTING = createVariantRouting(ROUTING_BIN_SIZE);
 
   public static final EsCallSetSerializer ES_CALL_SET_SERIALIZER = new EsCallSetSerializer();
   public static final EsVariantSetSerializer ES_VARIANT_SET_SERIALIZER = new EsVariantSetSerializer();
@@ -126,8 +146,9 @@ public class Factory {
   private static final String TRANSPORT_SETTINGS_FILENAME =
       "org/icgc/dcc/ga4gh/resources/settings/transport.properties";
 
-  public static Indexer buildIndexer2(Client client, DocumentWriter writer, IndexCreatorContext ctx){
-    return new Indexer(client,writer,ctx,ES_VARIANT_SET_CONVERTER_JSON, ES_CALL_SET_CONVERTER_JSON, ES_VARIANT_CALL_PAIR_CONVERTER_JSON_2);
+  public static Indexer buildIndexer2(Client client, DocumentWriter writer, BulkWriter bulkWriter, IndexCreatorContext ctx){
+    return new Indexer(client,writer,bulkWriter,ctx,INDEX_NUM_PARTITIONS, INDEX_PARTITION_BLOCK_SIZE,
+        ES_VARIANT_SET_CONVERTER_JSON, ES_CALL_SET_CONVERTER_JSON, ES_VARIANT_CALL_PAIR_SMILE_ENCODER, VARIANT_ROUTING);
   }
 
   private static final <ID> String generateMapStorageName(String prefix, Class<ID> type){
@@ -143,14 +164,34 @@ public class Factory {
   }
 
   public static DocumentWriter buildDocumentWriter(Client client){
-    return createDocumentWriter(client, INDEX_NAME, BULK_SIZE_MB, BULK_NUM_THREADS);
+    return buildDocumentWriter(client, INDEX_NAME);
+  }
+
+  public static DocumentWriter buildDocumentWriter(Client client, String indexName){
+    return createDocumentWriter(client, indexName, BULK_SIZE_MB, BULK_NUM_THREADS);
+  }
+
+  public static BulkWriter buildBulkWriter(Client client){
+    if (BULK_ADAPTIVE){
+      return createAdaptiveBulkWriter(client, BULK_SIZE_MB, BULK_MIN_SIZE_MB, BULK_MAX_SIZE_MB,
+          BULK_NUM_THREADS, BULK_MAX_NUM_THREADS, BULK_TARGET_LATENCY_MS);
+    }
+    return createBulkProcessorWriter(client, BULK_SIZE_MB, BULK_NUM_THREADS);
   }
 
   public static IndexCreatorContext buildIndexCreatorContext(Client client) {
+    return buildIndexCreatorContext(client, INDEX_NAME);
+  }
+
+  public static IndexCreatorContext buildIndexCreatorContext(Client client, String indexName) {
     return IndexCreatorContext.builder()
         .client(client)
         .indexingEnabled(true)
-        .indexName(INDEX_NAME)
+        .indexName(indexName)
+        .aliasName(INDEX_ALIAS)
+        .numRetainedIndices(INDEX_RETENTION)
+        .bulkLoadTuning(BULK_LOAD_TUNING)
+        .routingBinSize(ROUTING_BIN_SIZE)
         .indexSettingsFilename(INDEX_SETTINGS_JSON_FILENAME)
         .mappingDirname(DEFAULT_MAPPINGS_DIRNAME)
         .mappingFilenameExtension(DEFAULT_MAPPING_JSON_EXTENSION)
@@ -244,6 +285,6 @@ public class Factory {
 
   public static VariantAggregator buildVariantAggregator(boolean useDisk, boolean persist) {
     val mapStorage = VARIANT_AGGREGATOR_MAP_STORAGE_FACTORY.createMapStorage(useDisk, persist);
-    return createVariantAggregator(mapStorage);
+    return createMapVariantAggregator(mapStorage);
   }
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.elasticsearch.rest.RestStatus.TOO_MANY_REQUESTS;
+import static org.icgc.dcc.ga4gh.loader.indexing.BulkStats.createBulkStats;
+
+/**
+ * BulkWriter that adapts the bulk size and the number of in-flight bulk requests to the cluster, using additive
+ * increase / multiplicative decrease (AIMD). Every bulk that completes under the target latency without rejections
+ * grows the bulk size by a fixed step and the concurrency by about one request per round trip. A bulk that is
+ * slower than the target, or has rejected items, halves both, at most once per target latency so that a burst of
+ * rejections from the same window only counts once. Rejected items are retried with an exponential backoff, and
+ * all other item failures are counted as failed.
+ */
+@Slf4j
+public class AdaptiveBulkWriter implements BulkWriter {
+
+  private static final String RETRY_THREAD_NAME = "bulk-retry-%d";
+  private static final double DECREASE_FACTOR = 0.5;
+  private static final long BULK_SIZE_STEP_BYTES = 256 * 1024;
+  private static final long INITIAL_BACKOFF_MS = 100;
+  private static final long MAX_BACKOFF_MS = 30000;
+  private static final int MAX_RETRIES = 10;
+
+  /**
+   * Dependencies.
+   */
+  private final Client client;
+  private final ScheduledExecutorService retryExecutor;
+  @Getter
+  private final BulkStats stats = createBulkStats();
+
+  /**
+   * Configuration.
+   */
+  private final long minBulkSizeBytes;
+  private final long maxBulkSizeBytes;
+  private final int maxConcurrency;
+  private final long targetLatencyNanos;
+
+  /**
+   * State, guarded by this.
+   */
+  private double concurrencyLimit;
+  private long bulkSizeBytes;
+  private long lastDecreaseNanos = 0;
+  private int numInFlight = 0;
+  private int numPendingRetries = 0;
+  private Batch batch = new Batch(0);
+
+  private AdaptiveBulkWriter(@NonNull Client client, long initialBulkSizeBytes, long minBulkSizeBytes,
+      long maxBulkSizeBytes, int initialConcurrency, int maxConcurrency, long targetLatencyMs) {
+    checkArgument(minBulkSizeBytes > 0 && minBulkSizeBytes <= maxBulkSizeBytes,
+        "The min bulk size [%s] must be positive and at most the max bulk size [%s]", minBulkSizeBytes, maxBulkSizeBytes);
+    checkArgument(initialConcurrency > 0 && initialConcurrency <= maxConcurrency,
+        "The initial concurrency [%s] must be positive and at most the max concurrency [%s]",
+        initialConcurrency, maxConcurrency);
+    this.client = client;
+    this.retryExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat(RETRY_THREAD_NAME).setDaemon(true).build());
+    this.minBulkSizeBytes = minBulkSizeBytes;
+    this.maxBulkSizeBytes = maxBulkSizeBytes;
+    this.maxConcurrency = maxConcurrency;
+    this.targetLatencyNanos = MILLISECONDS.toNanos(targetLatencyMs);
+    this.bulkSizeBytes = Math.min(Math.max(initialBulkSizeBytes, minBulkSizeBytes), maxBulkSizeBytes);
+    this.concurrencyLimit = initialConcurrency;
+  }
+
+  @Override
+  public void write(@NonNull IndexRequest request) {
+    add(request);
+  }
+
+  @Override
+  public void write(@NonNull UpdateRequest request) {
+    add(request);
+  }
+
+  private synchronized void add(ActionRequest<?> request) {
+    batch.add(request);
+    if (batch.getBulkRequest().estimatedSizeInBytes() >= bulkSizeBytes) {
+      sendCurrentBatch();
+    }
+  }
+
+  private synchronized void sendCurrentBatch() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    val full = batch;
+    batch = new Batch(0);
+    send(full);
+  }
+
+  /**
+   * Blocks until there is a free in-flight slot, then sends the batch asynchronously
+   */
+  private synchronized void send(Batch toSend) {
+    try {
+      while (numInFlight >= (int) concurrencyLimit) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stats.recordFailed(toSend.size());
+      log.error("Interrupted while waiting to send a bulk of {} requests", toSend.size());
+      return;
+    }
+    numInFlight++;
+    val startNanos = System.nanoTime();
+    client.bulk(toSend.getBulkRequest(), new ActionListener<BulkResponse>() {
+
+      @Override
+      public void onResponse(BulkResponse response) {
+        onBulkResponse(toSend, response, System.nanoTime() - startNanos);
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        onBulkFailure(toSend, e, System.nanoTime() - startNanos);
+      }
+
+    });
+  }
+
+  /**
+   * Rejected requests are scheduled for retry before the in-flight slot is released, so that flush never observes
+   * a moment with neither in-flight nor pending requests while a retry is still due
+   */
+  private void onBulkResponse(Batch sent, BulkResponse response, long latencyNanos) {
+    stats.recordBulk(sent.size(), sent.getBulkRequest().estimatedSizeInBytes(), latencyNanos);
+    val rejected = new Batch(sent.getAttempt() + 1);
+    if (response.hasFailures()) {
+      int numFailed = 0;
+      for (val item : response.getItems()) {
+        if (!item.isFailed()) {
+          continue;
+        }
+        if (isRejected(item)) {
+          rejected.add(sent.get(item.getItemId()));
+        } else {
+          numFailed++;
+          log.error("Bulk item [{}] failed: {}", item.getId(), item.getFailureMessage());
+        }
+      }
+      stats.recordFailed(numFailed);
+    }
+    retry(rejected);
+    complete(!rejected.isEmpty(), latencyNanos);
+  }
+
+  private void onBulkFailure(Batch sent, Exception e, long latencyNanos) {
+    if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+      retry(sent.withNextAttempt());
+      complete(true, latencyNanos);
+    } else {
+      log.error("Bulk of {} requests failed", sent.size(), e);
+      stats.recordFailed(sent.size());
+      complete(false, latencyNanos);
+    }
+  }
+
+  private synchronized void complete(boolean congested, long latencyNanos) {
+    numInFlight--;
+    if (congested || latencyNanos > targetLatencyNanos) {
+      decrease();
+    } else {
+      concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+      bulkSizeBytes = Math.min(maxBulkSizeBytes, bulkSizeBytes + BULK_SIZE_STEP_BYTES);
+    }
+    notifyAll();
+  }
+
+  private void decrease() {
+    val now = System.nanoTime();
+    if (now - lastDecreaseNanos < targetLatencyNanos) {
+      return;
+    }
+    lastDecreaseNanos = now;
+    concurrencyLimit = Math.max(1, concurrencyLimit * DECREASE_FACTOR);
+    bulkSizeBytes = Math.max(minBulkSizeBytes, (long) (bulkSizeBytes * DECREASE_FACTOR));
+    log.info("Backing off: bulk size {} KB, concurrency {}", bulkSizeBytes / 1024, (int) concurrencyLimit);
+  }
+
+  private synchronized void retry(Batch rejected) {
+    if (rejected.isEmpty()) {
+      return;
+    }
+    stats.recordRejected(rejected.size());
+    if (rejected.getAttempt() > MAX_RETRIES) {
+      log.error("Giving up on {} requests after {} rejected attempts", rejected.size(), MAX_RETRIES);
+      stats.recordFailed(rejected.size());
+      return;
+    }
+    stats.recordRetried(rejected.size());
+    numPendingRetries++;
+    val delayMs = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(rejected.getAttempt() - 1, 20));
+    retryExecutor.schedule(() -> {
+      send(rejected);
+      synchronized (this) {
+        numPendingRetries--;
+        notifyAll();
+      }
+    }, delayMs, MILLISECONDS);
+  }
+
+  private static boolean isRejected(BulkItemResponse item) {
+    return item.getFailure().getStatus() == TOO_MANY_REQUESTS;
+  }
+
+  @Override
+  public synchronized void flush() throws InterruptedException {
+    sendCurrentBatch();
+    while (numInFlight > 0 || numPendingRetries > 0) {
+      wait();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } finally {
+      retryExecutor.shutdownNow();
+    }
+    log.info("Final bulk size {} KB, concurrency {}\n{}", bulkSizeBytes / 1024, (int) concurrencyLimit,
+        stats.toReport());
+    checkState(stats.getNumFailed() == 0, "%s bulk requests failed", stats.getNumFailed());
+  }
+
+  public static AdaptiveBulkWriter createAdaptiveBulkWriter(Client client, int initialBulkSizeMb, int minBulkSizeMb,
+      int maxBulkSizeMb, int initialConcurrency, int maxConcurrency, long targetLatencyMs) {
+    return new AdaptiveBulkWriter(client, mbToBytes(initialBulkSizeMb), mbToBytes(minBulkSizeMb),
+        mbToBytes(maxBulkSizeMb), initialConcurrency, maxConcurrency, targetLatencyMs);
+  }
+
+  private static long mbToBytes(int mb) {
+    return mb * 1024L * 1024L;
+  }
+
+  /**
+   * Requests of one bulk, kept in order so that failed items can be mapped back to their request
+   */
+  @RequiredArgsConstructor
+  private static class Batch {
+
+    @Getter private final int attempt;
+    @Getter private final BulkRequest bulkRequest = new BulkRequest();
+    private final List<ActionRequest<?>> requests = Lists.newArrayList();
+
+    void add(ActionRequest<?> request) {
+      if (request instanceof IndexRequest) {
+        bulkRequest.add((IndexRequest) request);
+      } else if (request instanceof UpdateRequest) {
+        bulkRequest.add((UpdateRequest) request);
+      } else {
+        throw new IllegalArgumentException("Unsupported bulk request type: " + request.getClass().getName());
+      }
+      requests.add(request);
+    }
+
+    ActionRequest<?> get(int i) {
+      return requests.get(i);
+    }
+
+    int size() {
+      return requests.size();
+    }
+
+    boolean isEmpty() {
+      return requests.isEmpty();
+    }
+
+    Batch withNextAttempt() {
+      val next = new Batch(attempt + 1);
+      requests.forEach(next::add);
+      return next;
+    }
+
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Arrays.stream;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.indexing.BulkStats.createBulkStats;
+
+/**
+ * BulkWriter backed by the Elasticsearch BulkProcessor, which flushes by size and retries rejected bulks with an
+ * exponential backoff.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class BulkProcessorWriter implements BulkWriter {
+
+  @NonNull private final BulkProcessor bulkProcessor;
+  @NonNull private final StatsListener listener;
+
+  @Override
+  public void write(@NonNull IndexRequest request) {
+    bulkProcessor.add(request);
+  }
+
+  @Override
+  public void write(@NonNull UpdateRequest request) {
+    bulkProcessor.add(request);
+  }
+
+  @Override
+  public void flush() throws InterruptedException {
+    bulkProcessor.flush();
+    listener.awaitCompletion();
+  }
+
+  @Override
+  public BulkStats getStats() {
+    return listener.getStats();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      checkState(bulkProcessor.awaitClose(Long.MAX_VALUE, MINUTES), "The BulkProcessor did not close");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    val numFailed = getStats().getNumFailed();
+    checkState(numFailed == 0, "%s bulk requests failed", numFailed);
+  }
+
+  public static BulkProcessorWriter createBulkProcessorWriter(@NonNull Client client, int bulkSizeMb,
+      int bulkNumThreads) {
+    val listener = new StatsListener(createBulkStats());
+    val bulkProcessor = BulkProcessor.builder(client, listener)
+        .setBulkActions(-1)
+        .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+        .setConcurrentRequests(bulkNumThreads)
+        .setBackoffPolicy(BackoffPolicy.exponentialBackoff())
+        .build();
+    return new BulkProcessorWriter(bulkProcessor, listener);
+  }
+
+  @RequiredArgsConstructor
+  private static class StatsListener implements BulkProcessor.Listener {
+
+    @Getter
+    @NonNull private final BulkStats stats;
+    private final Map<Long, Long> startNanos = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeBulk(long executionId, BulkRequest request) {
+      startNanos.put(executionId, System.nanoTime());
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+      stats.recordBulk(request.numberOfActions(), request.estimatedSizeInBytes(), elapsedNanos(executionId));
+      if (response.hasFailures()) {
+        val numFailed = (int) stream(response.getItems()).filter(BulkItemResponse::isFailed).count();
+        stats.recordFailed(numFailed);
+        log.error("Bulk [{}] had {} failed requests: {}", executionId, numFailed, response.buildFailureMessage());
+      }
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+      elapsedNanos(executionId);
+      stats.recordFailed(request.numberOfActions());
+      log.error("Bulk [{}] with {} requests failed", executionId, request.numberOfActions(), failure);
+    }
+
+    private synchronized long elapsedNanos(long executionId) {
+      val start = startNanos.remove(executionId);
+      notifyAll();
+      return System.nanoTime() - start;
+    }
+
+    private synchronized void awaitCompletion() throws InterruptedException {
+      while (!startNanos.isEmpty()) {
+        wait();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import lombok.NoArgsConstructor;
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Thread-safe throughput, latency and failure counters of a BulkWriter
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class BulkStats {
+
+  private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+  private final long startNanos = System.nanoTime();
+  private final LongAdder numBulks = new LongAdder();
+  private final LongAdder numActions = new LongAdder();
+  private final LongAdder numBytes = new LongAdder();
+  private final LongAdder totalLatencyNanos = new LongAdder();
+  private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+  private final LongAdder numRejected = new LongAdder();
+  private final LongAdder numRetried = new LongAdder();
+  private final AtomicLong numFailed = new AtomicLong(0);
+
+  public void recordBulk(int actions, long bytes, long latencyNanos) {
+    numBulks.increment();
+    numActions.add(actions);
+    numBytes.add(bytes);
+    totalLatencyNanos.add(latencyNanos);
+    maxLatencyNanos.accumulate(latencyNanos);
+  }
+
+  public void recordRejected(int actions) {
+    numRejected.add(actions);
+  }
+
+  public void recordRetried(int actions) {
+    numRetried.add(actions);
+  }
+
+  public void recordFailed(int actions) {
+    numFailed.addAndGet(actions);
+  }
+
+  public long getNumFailed() {
+    return numFailed.get();
+  }
+
+  public String toReport() {
+    val elapsedSeconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+    val bulks = numBulks.sum();
+    val actions = numActions.sum();
+    val megaBytes = numBytes.sum() / BYTES_PER_MB;
+    val meanLatencyMs = bulks == 0 ? 0 : NANOSECONDS.toMillis(totalLatencyNanos.sum() / bulks);
+    return String.format("bulks: %d, actions: %d, size: %.1f MB, elapsed: %.1f s"
+            + "\nthroughput: %.1f actions/s, %.2f MB/s"
+            + "\nlatency: mean %d ms, max %d ms"
+            + "\nrejected: %d, retried: %d, failed: %d",
+        bulks, actions, megaBytes, elapsedSeconds,
+        actions / elapsedSeconds, megaBytes / elapsedSeconds,
+        meanLatencyMs, NANOSECONDS.toMillis(maxLatencyNanos.get()),
+        numRejected.sum(), numRetried.sum(), numFailed.get());
+  }
+
+  public static BulkStats createBulkStats() {
+    return new BulkStats();
+  }
+
+}
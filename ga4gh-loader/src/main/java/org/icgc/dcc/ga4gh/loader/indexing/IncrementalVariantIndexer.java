@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.SearchHit;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Arrays.stream;
+import static lombok.AccessLevel.PRIVATE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.icgc.dcc.common.core.json.Jackson.DEFAULT;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.ALTERNATIVE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.CALLS;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.END;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_BASES;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_NAME;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.START;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_CALL_PAIR_CONVERTER_JSON_2;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_CALL_PAIR_SMILE_ENCODER;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.VARIANT_ROUTING;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_CONVERTER_JSON;
+
+/**
+ * Merges aggregated variants into an existing index. Each batch of variants is looked up by coordinates with a
+ * single multi-search. Variants that already exist get their calls appended with a scripted update, which skips
+ * calls of the same callSet and variantSets that are already present, so re-running a delta is harmless.
+ * Variants that do not exist are created with the id assigned by the aggregator, or, for sequential ids, with ids
+ * continuing from firstNewVariantId. Creation never overwrites an existing document.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class IncrementalVariantIndexer {
+
+  private static final String SCRIPT_LANG = "painless";
+  private static final String CALLS_PARAM = "calls";
+  private static final String APPEND_CALLS_SCRIPT =
+      "def keys = new HashSet(); boolean added = false;"
+          + " for (c in ctx._source.calls) { keys.add(c.call_set_id + ':' + c.variant_set_ids); }"
+          + " for (c in params.calls) {"
+          + "   if (keys.add(c.call_set_id + ':' + c.variant_set_ids)) { ctx._source.calls.add(c); added = true; }"
+          + " }"
+          + " if (!added) { ctx.op = 'none'; }";
+
+  /**
+   * reference_bases and alternate_bases are not indexed, so the lookup matches on position and the bases are
+   * compared client side. Far fewer variants than this share the same position.
+   */
+  private static final int MAX_HITS_PER_POSITION = 1000;
+  private static final String[] LOOKUP_FIELDS = { START, END, REFERENCE_NAME, REFERENCE_BASES, ALTERNATIVE_BASES };
+
+  @NonNull private final Client client;
+  @NonNull private final BulkWriter bulkWriter;
+  @NonNull private final String indexName;
+  private final int batchSize;
+  @NonNull private final OptionalLong firstNewVariantId;
+
+  private long numCreated = 0;
+  private long numUpdated = 0;
+
+  public void index(@NonNull Stream<VariantIdContext<Long>> stream) {
+    Iterators.partition(stream.iterator(), batchSize).forEachRemaining(this::indexBatch);
+    log.info("Incrementally indexed variants into [{}]: {} created, {} updated", indexName, numCreated, numUpdated);
+  }
+
+  private void indexBatch(List<VariantIdContext<Long>> batch) {
+    val multiSearch = client.prepareMultiSearch();
+    batch.forEach(x -> multiSearch.add(buildLookup(x.getEsVariantCallPair().getVariant())));
+    val responses = multiSearch.get().getResponses();
+    for (int i = 0; i < batch.size(); i++) {
+      val variantIdContext = batch.get(i);
+      val esVariantCallPair = variantIdContext.getEsVariantCallPair();
+      val item = responses[i];
+      checkState(!item.isFailure(), "The lookup of the variant [%s] failed: %s",
+          esVariantCallPair.getVariant(), item.getFailureMessage());
+      val existingId = findExistingId(esVariantCallPair.getVariant(), item.getResponse());
+      if (existingId.isPresent()) {
+        appendCalls(existingId.get(), esVariantCallPair);
+      } else {
+        create(variantIdContext);
+      }
+    }
+  }
+
+  private SearchRequestBuilder buildLookup(EsVariant variant) {
+    return client.prepareSearch(indexName)
+        .setTypes(VARIANT)
+        .setRouting(VARIANT_ROUTING.getRouting(variant))
+        .setQuery(boolQuery()
+            .filter(termQuery(REFERENCE_NAME, variant.getReferenceName()))
+            .filter(termQuery(START, variant.getStart()))
+            .filter(termQuery(END, variant.getEnd())))
+        .setFetchSource(LOOKUP_FIELDS, null)
+        .setSize(MAX_HITS_PER_POSITION);
+  }
+
+  private static Optional<String> findExistingId(EsVariant variant, SearchResponse response) {
+    val hits = response.getHits();
+    checkState(hits.getTotalHits() <= MAX_HITS_PER_POSITION,
+        "The number of variants [%s] at the position of [%s] exceeds the lookup limit [%s]",
+        hits.getTotalHits(), variant, MAX_HITS_PER_POSITION);
+    return stream(hits.getHits())
+        .filter(hit -> variant.equals(ES_VARIANT_CONVERTER_JSON.convertFromSource(hit.getSource())))
+        .map(SearchHit::getId)
+        .findFirst();
+  }
+
+  private void appendCalls(String variantId, EsVariantCallPair esVariantCallPair) {
+    val data = ES_VARIANT_CALL_PAIR_CONVERTER_JSON_2.convertToObjectNode(esVariantCallPair);
+    val calls = DEFAULT.convertValue(data.path(CALLS), List.class);
+    val script = new Script(APPEND_CALLS_SCRIPT, ScriptType.INLINE, SCRIPT_LANG, ImmutableMap.of(CALLS_PARAM, calls));
+    bulkWriter.write(new UpdateRequest(indexName, VARIANT, variantId)
+        .routing(VARIANT_ROUTING.getRouting(esVariantCallPair.getVariant()))
+        .script(script));
+    numUpdated++;
+  }
+
+  private void create(VariantIdContext<Long> variantIdContext) {
+    val variantId = firstNewVariantId.isPresent() ? firstNewVariantId.getAsLong() + numCreated : variantIdContext.getId();
+    val source = ES_VARIANT_CALL_PAIR_SMILE_ENCODER.encode(variantIdContext.getEsVariantCallPair(), variantId);
+    bulkWriter.write(new IndexRequest(indexName, VARIANT, Long.toString(variantId))
+        .routing(VARIANT_ROUTING.getRouting(variantIdContext.getEsVariantCallPair().getVariant()))
+        .source(source)
+        .create(true));
+    numCreated++;
+  }
+
+  public static IncrementalVariantIndexer createIncrementalVariantIndexer(@NonNull Client client,
+      @NonNull BulkWriter bulkWriter, @NonNull String indexName, @NonNull OptionalLong firstNewVariantId,
+      int batchSize) {
+    return new IncrementalVariantIndexer(client, bulkWriter, indexName, batchSize, firstNewVariantId);
+  }
+
+}
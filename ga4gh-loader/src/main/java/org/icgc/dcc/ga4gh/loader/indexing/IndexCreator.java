@@ -26,11 +26,17 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 
 import java.util.concurrent.ExecutionException;
 
 import static com.google.common.base.Preconditions.checkState;
 import static org.icgc.dcc.common.core.json.Jackson.DEFAULT;
+import static org.icgc.dcc.ga4gh.common.IndexAliases.pruneIndices;
+import static org.icgc.dcc.ga4gh.common.IndexAliases.swapAlias;
+import static org.icgc.dcc.ga4gh.common.IndexMetadata.putRoutingBinSize;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
 
 /*
  * Prepares an index, by reading a configuration object to properly index the types and 
@@ -40,6 +46,20 @@ import static org.icgc.dcc.common.core.json.Jackson.DEFAULT;
 @Slf4j
 public class IndexCreator {
 
+  /*
+   * Settings overridden while bulk loading, and the values restored when the file does not define them
+   */
+  private static final String REFRESH_INTERVAL = "index.refresh_interval";
+  private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+  private static final String TRANSLOG_DURABILITY = "index.translog.durability";
+  private static final String BULK_LOAD_REFRESH_INTERVAL = "-1";
+  private static final int BULK_LOAD_NUMBER_OF_REPLICAS = 0;
+  private static final String BULK_LOAD_TRANSLOG_DURABILITY = "async";
+  private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+  private static final String DEFAULT_NUMBER_OF_REPLICAS = "1";
+  private static final String DEFAULT_TRANSLOG_DURABILITY = "request";
+  private static final TimeValue GREEN_STATUS_TIMEOUT = TimeValue.timeValueMinutes(30);
+
   @NonNull
   private final IndexCreatorContext indexCreatorContext;
 
@@ -62,8 +82,15 @@ public class IndexCreator {
       }
 
       /// indexes.preparePutMapping(indices)
+      val settings = read(indexCreatorContext.getIndexSettingsFilename());
+      if (indexCreatorContext.isBulkLoadTuning()) {
+        settings.put(REFRESH_INTERVAL, BULK_LOAD_REFRESH_INTERVAL);
+        settings.put(NUMBER_OF_REPLICAS, BULK_LOAD_NUMBER_OF_REPLICAS);
+        settings.put(TRANSLOG_DURABILITY, BULK_LOAD_TRANSLOG_DURABILITY);
+        log.info("Creating index [{}] with bulk load settings (refresh disabled, no replicas, async translog)", indexName);
+      }
       val createIndexRequestBuilder = indexes.prepareCreate(indexName)
-          .setSettings(read(indexCreatorContext.getIndexSettingsFilename()).toString());
+          .setSettings(settings.toString());
 
       for (val typeName : indexCreatorContext.getTypeNames()) {
         addMapping(createIndexRequestBuilder, typeName);
@@ -75,6 +102,53 @@ public class IndexCreator {
     }
   }
 
+  /*
+   * Restores the settings from the index settings file that were overridden for bulk loading
+   */
+  public void restoreProductionSettings() {
+    if (!indexCreatorContext.isBulkLoadTuning()) {
+      return;
+    }
+    val indexName = indexCreatorContext.getIndexName();
+    val production = read(indexCreatorContext.getIndexSettingsFilename());
+    val settings = Settings.builder()
+        .put(REFRESH_INTERVAL, production.path(REFRESH_INTERVAL).asText(DEFAULT_REFRESH_INTERVAL))
+        .put(NUMBER_OF_REPLICAS, production.path(NUMBER_OF_REPLICAS).asText(DEFAULT_NUMBER_OF_REPLICAS))
+        .put(TRANSLOG_DURABILITY, production.path(TRANSLOG_DURABILITY).asText(DEFAULT_TRANSLOG_DURABILITY))
+        .build();
+    val indexes = indexCreatorContext.getClient().admin().indices();
+    checkState(indexes.prepareUpdateSettings(indexName).setSettings(settings).get().isAcknowledged(),
+        "The production settings of index [%s] were not acknowledged", indexName);
+    log.info("Restored production settings of index [{}]: {}", indexName, settings.getAsMap());
+  }
+
+  /*
+   * Waits for the restored replicas to be allocated, so the alias is not swapped onto a degraded index
+   */
+  public void waitForGreen() {
+    val indexName = indexCreatorContext.getIndexName();
+    log.info("Waiting for index [{}] to become green...", indexName);
+    val response = indexCreatorContext.getClient().admin().cluster()
+        .prepareHealth(indexName)
+        .setWaitForGreenStatus()
+        .setTimeout(GREEN_STATUS_TIMEOUT)
+        .get();
+    if (response.isTimedOut()) {
+      log.warn("Index [{}] is still {} after {}, continuing", indexName, response.getStatus(), GREEN_STATUS_TIMEOUT);
+    }
+  }
+
+  /*
+   * Atomically moves the alias from whichever indices currently hold it onto this index, then deletes the
+   * versioned indices that fall outside the retention
+   */
+  public void swapAlias() {
+    val client = indexCreatorContext.getClient();
+    val aliasName = indexCreatorContext.getAliasName();
+    swapAlias(client, aliasName, indexCreatorContext.getIndexName());
+    pruneIndices(client, aliasName, indexCreatorContext.getNumRetainedIndices());
+  }
+
   @SneakyThrows
   private ObjectNode read(final String fileName) {
     val url = Resources.getResource(indexCreatorContext.getMappingDirname() + "/" + fileName);
@@ -82,7 +156,11 @@ public class IndexCreator {
   }
 
   private void addMapping(@NonNull final CreateIndexRequestBuilder builder, @NonNull final String typeName) {
-    builder.addMapping(typeName, read(typeName + this.indexCreatorContext.getMappingFilenameExtension()).toString());
+    val mapping = read(typeName + this.indexCreatorContext.getMappingFilenameExtension());
+    if (typeName.equals(VARIANT)) {
+      putRoutingBinSize(mapping, indexCreatorContext.getRoutingBinSize());
+    }
+    builder.addMapping(typeName, mapping.toString());
   }
 
 
@@ -64,6 +64,27 @@ public class IndexCreatorContext {
    */
   private final boolean indexingEnabled;
 
+  /*
+   * Alias that serves the index once loading is complete
+   */
+  @NonNull
+  private final String aliasName;
+
+  /*
+   * Number of previous versioned indices kept for rollback after the alias is swapped
+   */
+  private final int numRetainedIndices;
+
+  /*
+   * Create the index with settings for fast bulk loading, and restore the production settings afterwards
+   */
+  private final boolean bulkLoadTuning;
+
+  /*
+   * Bin size the variants are routed with, recorded in the variant mapping for the readers of the index
+   */
+  private final long routingBinSize;
+
   /*
    * MiscNames of the different types in this index
    */
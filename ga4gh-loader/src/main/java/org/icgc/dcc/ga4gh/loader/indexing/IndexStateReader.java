@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import com.google.common.collect.Maps;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.icgc.dcc.ga4gh.common.IndexMetadata;
+import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Integer.parseInt;
+import static lombok.AccessLevel.PRIVATE;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
+import static org.icgc.dcc.ga4gh.common.TypeNames.CALL_SET;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT_SET;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CALL_SET_CONVERTER_JSON;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SET_CONVERTER_JSON;
+
+/**
+ * Reads the ids and documents already present in an index, so that an incremental load can continue from them.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class IndexStateReader {
+
+  private static final TimeValue SCROLL_TIMEOUT = TimeValue.timeValueMinutes(1);
+  private static final int SCROLL_SIZE = 1000;
+  private static final String MAX_DOC_ID = "max_" + DOC_ID;
+
+  @NonNull private final Client client;
+  @NonNull private final String indexName;
+
+  public boolean isIndexExisting() {
+    return client.admin().indices().prepareExists(indexName).get().isExists();
+  }
+
+  public long readRoutingBinSize() {
+    return IndexMetadata.readRoutingBinSize(client, indexName);
+  }
+
+  /**
+   * One more than the greatest variant id, read from the doc_id field. Ids are not dense once an incremental load
+   * appended variants or a load skipped some, so the number of variants cannot be used.
+   */
+  public long readNextVariantId() {
+    val response = client.prepareSearch(indexName)
+        .setTypes(VARIANT)
+        .setSize(0)
+        .addAggregation(max(MAX_DOC_ID).field(DOC_ID))
+        .get();
+    val maxDocId = response.getAggregations().<Max>get(MAX_DOC_ID).getValue();
+    if (response.getHits().getTotalHits() == 0) {
+      return 0;
+    }
+    checkState(!Double.isInfinite(maxDocId), "The variants of the index [%s] have no %s field. "
+        + "It was built by an older loader, so a full load is required", indexName, DOC_ID);
+    return (long) maxDocId + 1;
+  }
+
+  public Map<EsVariantSet, Integer> readVariantSets() {
+    val variantSets = Maps.<EsVariantSet, Integer>newHashMap();
+    scan(VARIANT_SET, hit -> variantSets.put(ES_VARIANT_SET_CONVERTER_JSON.convertFromSearchHit(hit), parseInt(hit.getId())));
+    log.info("Read {} existing VariantSets from [{}]", variantSets.size(), indexName);
+    return variantSets;
+  }
+
+  public Map<Integer, EsCallSet> readCallSets() {
+    val callSets = Maps.<Integer, EsCallSet>newHashMap();
+    scan(CALL_SET, hit -> callSets.put(parseInt(hit.getId()), ES_CALL_SET_CONVERTER_JSON.convertFromSearchHit(hit)));
+    log.info("Read {} existing CallSets from [{}]", callSets.size(), indexName);
+    return callSets;
+  }
+
+  private void scan(String typeName, Consumer<SearchHit> consumer) {
+    SearchResponse response = client.prepareSearch(indexName)
+        .setTypes(typeName)
+        .setQuery(matchAllQuery())
+        .setSize(SCROLL_SIZE)
+        .setScroll(SCROLL_TIMEOUT)
+        .get();
+    while (response.getHits().getHits().length > 0) {
+      for (val hit : response.getHits().getHits()) {
+        consumer.accept(hit);
+      }
+      response = client.prepareSearchScroll(response.getScrollId()).setScroll(SCROLL_TIMEOUT).get();
+    }
+    client.prepareClearScroll().addScrollId(response.getScrollId()).get();
+  }
+
+  public static IndexStateReader createIndexStateReader(Client client, String indexName) {
+    return new IndexStateReader(client, indexName);
+  }
+
+}
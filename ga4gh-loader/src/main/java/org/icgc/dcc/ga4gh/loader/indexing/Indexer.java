@@ -27,6 +27,7 @@ import lombok.SneakyThrows;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.rest.RestStatus;
 import org.icgc.dcc.dcc.common.es.core.DocumentWriter;
@@ -34,7 +35,7 @@ import org.icgc.dcc.dcc.common.es.impl.IndexDocumentType;
 import org.icgc.dcc.dcc.common.es.json.JacksonFactory;
 import org.icgc.dcc.dcc.common.es.model.IndexDocument;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
+import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSmileEncoder;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
@@ -49,12 +50,14 @@ import java.util.stream.Stream;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.propagate;
 import static org.elasticsearch.common.xcontent.XContentType.SMILE;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_ID;
 import static org.icgc.dcc.ga4gh.common.TypeNames.CALL;
 import static org.icgc.dcc.ga4gh.common.TypeNames.CALL_SET;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT_SET;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VCF_HEADER;
+import static org.icgc.dcc.ga4gh.loader.indexing.PartitionedVariantIndexer.createPartitionedVariantIndexer;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -78,12 +81,16 @@ public class Indexer {
   private final Client client;
   @NonNull
   private final DocumentWriter writer;
+  @NonNull
+  private final BulkWriter bulkWriter;
 
   /**
    * Configuration.
    */
   @NonNull
   private final IndexCreatorContext indexCreatorContext;
+  private final int numIndexingPartitions;
+  private final int partitionBlockSize;
 
   /*
    * State
@@ -91,7 +98,8 @@ public class Indexer {
   // Keys are strings NAMES, since those should never collide
   @NonNull private final EsVariantSetConverterJson variantSetConverter;
   @NonNull private final EsCallSetConverterJson esCallSetConverter;
-  @NonNull private final EsVariantCallPairConverterJson variantCallPairConverter;
+  @NonNull private final EsVariantCallPairSmileEncoder variantCallPairEncoder;
+  @NonNull private final VariantRouting variantRouting;
 
 
   @NonFinal
@@ -115,28 +123,47 @@ public class Indexer {
 
   public void optimize(){
     lazyInitIndexCreator();
-    forceMergeAllIndices(MAX_NUM_SEGMENTS);
-    flushAllIndices();
+    refreshIndex();
+    forceMergeIndex(MAX_NUM_SEGMENTS);
+    flushIndex();
   }
 
-  private void flushAllIndices(){
-    log.info("Started paranoid flush...");
-    indexCreatorContext.getClient()
-    .admin().indices()
-    .prepareFlush()
-    .execute();
+  /*
+   * Finishes a full load: merges the index while it still has no replicas (so merged segments are copied once),
+   * restores the production settings, and only then points the alias at the new index.
+   */
+  public void finalizeIndex(){
+    optimize();
+    indexCreator.restoreProductionSettings();
+    indexCreator.waitForGreen();
+    indexCreator.swapAlias();
+  }
+
+  private void refreshIndex(){
+    val indexName = indexCreatorContext.getIndexName();
+    log.info("Refreshing index [{}]...", indexName);
+    val response = client.admin().indices().prepareRefresh(indexName).get();
+    int numFailedShards = response.getFailedShards();
+    checkState(numFailedShards==0, "The request to refresh index [%s] had %s failed shards", indexName, numFailedShards);
+  }
+
+  private void flushIndex(){
+    val indexName = indexCreatorContext.getIndexName();
+    log.info("Started paranoid flush of index [{}]...", indexName);
+    val response = client.admin().indices().prepareFlush(indexName).get();
+    int numFailedShards = response.getFailedShards();
+    checkState(numFailedShards==0, "The request to flush index [%s] had %s failed shards", indexName, numFailedShards);
     log.info("Finished flush");
   }
 
-  @SneakyThrows
-  private void  forceMergeAllIndices(final int maxNumSegments){
-    log.info("Starting force merge on all indices...");
-    val client = indexCreatorContext.getClient();
-    val request = client.admin().indices().prepareForceMerge().setMaxNumSegments(maxNumSegments);
-    val response  = request.execute().get();
+  private void forceMergeIndex(final int maxNumSegments){
+    val indexName = indexCreatorContext.getIndexName();
+    log.info("Starting force merge of index [{}] to {} segments...", indexName, maxNumSegments);
+    val response = client.admin().indices().prepareForceMerge(indexName).setMaxNumSegments(maxNumSegments).get();
     int numFailedShards = response.getFailedShards();
-    checkState(numFailedShards==0, "The request to forceMerge all indices to {} segments, had {} failed shards", maxNumSegments, numFailedShards);
-    log.info("Finished force merge on all indices");
+    checkState(numFailedShards==0, "The request to forceMerge index [%s] to %s segments, had %s failed shards",
+        indexName, maxNumSegments, numFailedShards);
+    log.info("Finished force merge of index [{}]", indexName);
   }
 
 
@@ -146,9 +173,16 @@ public class Indexer {
 
   @SneakyThrows
   public void indexVariants(@NonNull Stream<VariantIdContext<Long>> stream){
-    variantMonitor.start();
-    stream.forEach(this::writeVariant);
-    variantMonitor.stop();
+    if (numIndexingPartitions > 1){
+      createPartitionedVariantIndexer(this::writeVariantDocument, numIndexingPartitions, partitionBlockSize)
+          .index(stream);
+    } else {
+      variantMonitor.start();
+      stream.forEach(this::writeVariant);
+      variantMonitor.stop();
+    }
+    bulkWriter.flush();
+    log.info("Variant bulk indexing report:\n{}", bulkWriter.getStats().toReport());
   }
 
   @SneakyThrows
@@ -162,24 +196,36 @@ public class Indexer {
   }
 
 
-  @SneakyThrows
+  /**
+   * Variants are by far the most numerous documents, so they are encoded straight to SMILE and written through the
+   * BulkWriter, instead of building an ObjectNode for the DocumentWriter
+   */
   private void writeVariant(VariantIdContext<Long> variantIdContext){
+    writeVariantDocument(variantIdContext);
+    variantMonitor.preIncr();
+  }
+
+  /**
+   * Thread-safe: the encoder buffers per thread and the BulkWriter synchronizes internally
+   */
+  private void writeVariantDocument(VariantIdContext<Long> variantIdContext){
     val variantId = variantIdContext.getId();
     val esVariantCallPair = variantIdContext.getEsVariantCallPair();
-    val data = variantCallPairConverter.convertToObjectNode(esVariantCallPair);
-    writer.write(new IndexDocument(variantId.toString(), data, new VariantDocumentType()));
-    variantMonitor.preIncr();
+    val source = variantCallPairEncoder.encode(esVariantCallPair, variantId);
+    bulkWriter.write(new IndexRequest(indexCreatorContext.getIndexName(), VARIANT, variantId.toString())
+        .routing(variantRouting.getRouting(esVariantCallPair.getVariant()))
+        .source(source));
   }
 
   @SneakyThrows
   private void writeCallSet(@NonNull EsCallSet callSet, @NonNull Integer callSetId) {
-    val data = esCallSetConverter.convertToObjectNode(callSet);
+    val data = esCallSetConverter.convertToObjectNode(callSet).put(DOC_ID, callSetId);
     writer.write( new IndexDocument(callSetId.toString(),data, new CallSetDocumentType()));
   }
 
   @SneakyThrows
   private void writeVariantSet(@NonNull EsVariantSet variantSet, @NonNull Integer variantSetId) {
-    val data = variantSetConverter.convertToObjectNode(variantSet);
+    val data = variantSetConverter.convertToObjectNode(variantSet).put(DOC_ID, variantSetId);
     writer.write(new IndexDocument(variantSetId.toString(), data, new VariantSetDocumentType()));
   }
 
@@ -205,14 +251,6 @@ public class Indexer {
   }
 
 
-  private static class VariantDocumentType implements IndexDocumentType {
-
-    @Override
-    public String getIndexType() {
-      return VARIANT;
-    }
-  }
-
   private static class VariantSetDocumentType implements IndexDocumentType {
 
     @Override
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.internal.InternalSettingsPreparer;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.snapshots.SnapshotState;
+import org.elasticsearch.transport.Netty4Plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Collections.singletonList;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Builds an index on a single node started inside the loader, so that the bulk load does not go through the cluster,
+ * then snapshots it into a filesystem repository that the cluster restores from.
+ * <p>
+ * The index is created with the same settings and mappings as on the cluster, so its shards are routed exactly as the
+ * cluster would route them and the snapshot restores shard for shard.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class OfflineIndexBuilder implements Closeable {
+
+  public static final String REPOSITORY_NAME = "ga4gh_offline";
+  public static final String REPOSITORY_TYPE = "fs";
+  public static final String REPOSITORY_DIRNAME = "repository";
+  private static final String NODE_DIRNAME = "node";
+  private static final String CLUSTER_NAME = "ga4gh-offline-build";
+  private static final String LOOPBACK_HOST = "127.0.0.1";
+  private static final TimeValue YELLOW_STATUS_TIMEOUT = TimeValue.timeValueMinutes(5);
+
+  @NonNull private final Path offlineDir;
+
+  private Node node;
+
+  public static Path getRepositoryPath(@NonNull Path offlineDir) {
+    return offlineDir.resolve(REPOSITORY_DIRNAME).toAbsolutePath();
+  }
+
+  /**
+   * Starts the local node, which only binds to the loopback interface and never joins another cluster
+   */
+  @SneakyThrows
+  public Client start() {
+    checkState(node == null, "The offline node is already started");
+    val settings = Settings.builder()
+        .put("cluster.name", CLUSTER_NAME)
+        .put("node.name", CLUSTER_NAME)
+        .put("path.home", offlineDir.resolve(NODE_DIRNAME).toAbsolutePath().toString())
+        .put("path.repo", getRepositoryPath(offlineDir).toString())
+        .put("network.host", LOOPBACK_HOST)
+        .put("transport.type", Netty4Plugin.NETTY_TRANSPORT_NAME)
+        .put("http.enabled", false)
+        .putArray("discovery.zen.ping.unicast.hosts")
+        .put("discovery.zen.minimum_master_nodes", 1)
+        .build();
+    node = new OfflineNode(settings);
+    node.start();
+    log.info("Started the offline node under [{}]", offlineDir);
+
+    val client = node.client();
+    client.admin().cluster().prepareHealth().setWaitForYellowStatus().setTimeout(YELLOW_STATUS_TIMEOUT).get();
+    return client;
+  }
+
+  /**
+   * Snapshots the built index into the repository, under the name of the index. The index must already be merged,
+   * so the snapshot only holds the final segments
+   */
+  public void snapshot(@NonNull String indexName) {
+    checkState(node != null, "The offline node is not started");
+    val cluster = node.client().admin().cluster();
+    val repositoryPath = getRepositoryPath(offlineDir);
+    checkState(cluster.preparePutRepository(REPOSITORY_NAME)
+        .setType(REPOSITORY_TYPE)
+        .setSettings(Settings.builder().put("location", repositoryPath.toString()))
+        .get().isAcknowledged(), "The repository [%s] was not acknowledged", repositoryPath);
+
+    log.info("Snapshotting index [{}] into [{}] ...", indexName, repositoryPath);
+    val snapshotInfo = cluster.prepareCreateSnapshot(REPOSITORY_NAME, indexName)
+        .setIndices(indexName)
+        .setIncludeGlobalState(false)
+        .setWaitForCompletion(true)
+        .get()
+        .getSnapshotInfo();
+    checkState(snapshotInfo.state() == SnapshotState.SUCCESS && snapshotInfo.failedShards() == 0,
+        "The snapshot of index [%s] ended %s with %s failed shards", indexName, snapshotInfo.state(),
+        snapshotInfo.failedShards());
+    log.info("Snapshotted {} shards of index [{}]", snapshotInfo.successfulShards(), indexName);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (node != null) {
+      node.close();
+      node = null;
+    }
+  }
+
+  public static OfflineIndexBuilder createOfflineIndexBuilder(Path offlineDir) {
+    return new OfflineIndexBuilder(offlineDir);
+  }
+
+  /**
+   * The node only loads the transport plugin, which the node needs even without any other node to talk to
+   */
+  private static class OfflineNode extends Node {
+
+    private static final Collection<Class<? extends Plugin>> PLUGINS = singletonList(Netty4Plugin.class);
+
+    private OfflineNode(Settings settings) {
+      super(InternalSettingsPreparer.prepareEnvironment(settings, null), PLUGINS);
+    }
+
+  }
+
+}
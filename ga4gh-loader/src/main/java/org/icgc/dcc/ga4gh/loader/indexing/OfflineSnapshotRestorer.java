@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+
+import static com.google.common.base.Preconditions.checkState;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.indexing.OfflineIndexBuilder.REPOSITORY_NAME;
+import static org.icgc.dcc.ga4gh.loader.indexing.OfflineIndexBuilder.REPOSITORY_TYPE;
+
+/**
+ * Restores the index snapshotted by the {@link OfflineIndexBuilder} into the cluster. The repository location is the
+ * path of the offline repository as the cluster nodes see it, and must be listed in their path.repo.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class OfflineSnapshotRestorer {
+
+  @NonNull private final Client client;
+  @NonNull private final String repositoryLocation;
+
+  /**
+   * Restores the snapshot of the index, which keeps the name it was built under
+   */
+  public void restore(@NonNull String indexName) {
+    val cluster = client.admin().cluster();
+    checkState(!client.admin().indices().prepareExists(indexName).get().isExists(),
+        "The index [%s] already exists in the cluster", indexName);
+    checkState(cluster.preparePutRepository(REPOSITORY_NAME)
+        .setType(REPOSITORY_TYPE)
+        .setSettings(Settings.builder()
+            .put("location", repositoryLocation)
+            .put("readonly", true))
+        .get().isAcknowledged(), "The repository [%s] was not acknowledged", repositoryLocation);
+
+    try {
+      log.info("Restoring index [{}] from [{}] ...", indexName, repositoryLocation);
+      val restoreInfo = cluster.prepareRestoreSnapshot(REPOSITORY_NAME, indexName)
+          .setIndices(indexName)
+          .setIncludeGlobalState(false)
+          .setWaitForCompletion(true)
+          .get()
+          .getRestoreInfo();
+      checkState(restoreInfo != null && restoreInfo.failedShards() == 0,
+          "The restore of index [%s] failed for %s shards", indexName, restoreInfo == null ? "all" : restoreInfo.failedShards());
+      log.info("Restored {} shards of index [{}]", restoreInfo.successfulShards(), indexName);
+    } finally {
+      cluster.prepareDeleteRepository(REPOSITORY_NAME).get();
+    }
+  }
+
+  public static OfflineSnapshotRestorer createOfflineSnapshotRestorer(Client client, String repositoryLocation) {
+    return new OfflineSnapshotRestorer(client, repositoryLocation);
+  }
+
+}
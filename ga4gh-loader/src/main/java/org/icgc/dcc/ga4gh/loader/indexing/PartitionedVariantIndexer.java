@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.loader.utils.counting.CounterMonitor;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.Config.MONITOR_INTERVAL_COUNT;
+
+/**
+ * Indexes the aggregated variant stream with one converter thread per partition. The calling thread reads the
+ * stream and routes each variant to the partition owning its id range: ids are cut into blocks of blockSize
+ * consecutive ids, dealt round-robin over the partitions. The ids were assigned by the VariantAggregator, so both
+ * the ids and their partitions are independent of thread scheduling. Blocks only group neighbouring variants for
+ * SEQUENTIAL ids; CONTENT_HASH ids are spread uniformly, so each variant effectively lands on a random, but still
+ * deterministic, partition. Each partition thread encodes its variants,
+ * writes them to the shared thread-safe BulkWriter and reports its own rates. The queues are bounded, so a slow
+ * partition throttles the reader instead of buffering the whole stream.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class PartitionedVariantIndexer {
+
+  private static final String WORKER_NAME_FORMAT = "variant-indexer-%d";
+  private static final int QUEUE_CAPACITY = 4;
+  private static final long OFFER_TIMEOUT_SECONDS = 1;
+  private static final List<VariantIdContext<Long>> END_OF_PARTITION = ImmutableList.of();
+
+  @NonNull private final Consumer<VariantIdContext<Long>> variantWriter;
+  private final int numPartitions;
+  private final int blockSize;
+
+  /**
+   * Indexes every variant of the stream and returns the number of variants written
+   */
+  @SneakyThrows
+  public long index(@NonNull Stream<VariantIdContext<Long>> stream) {
+    log.info("Indexing variants with {} partitions of {} id blocks", numPartitions, blockSize);
+    val threadFactory = new ThreadFactoryBuilder().setNameFormat(WORKER_NAME_FORMAT).build();
+    val executor = Executors.newFixedThreadPool(numPartitions, threadFactory);
+    final List<BlockingQueue<List<VariantIdContext<Long>>>> queues = newArrayList();
+    final List<Future<Long>> futures = newArrayList();
+    final List<List<VariantIdContext<Long>>> pending = newArrayList();
+    for (int i = 0; i < numPartitions; i++) {
+      val queue = new ArrayBlockingQueue<List<VariantIdContext<Long>>>(QUEUE_CAPACITY);
+      val monitor = CounterMonitor.createCounterMonitor("VariantIndexing-partition-" + i, MONITOR_INTERVAL_COUNT);
+      queues.add(queue);
+      futures.add(executor.submit(() -> runPartition(queue, monitor)));
+      pending.add(newArrayListWithCapacity(blockSize));
+    }
+    executor.shutdown();
+
+    try {
+      stream.forEach(variantIdContext -> {
+        val partition = getPartition(variantIdContext.getId());
+        val block = pending.get(partition);
+        block.add(variantIdContext);
+        if (block.size() >= blockSize) {
+          checkAccepted(put(queues.get(partition), futures.get(partition), block), futures.get(partition), partition);
+          pending.set(partition, newArrayListWithCapacity(blockSize));
+        }
+      });
+      for (int i = 0; i < numPartitions; i++) {
+        if (!pending.get(i).isEmpty()) {
+          checkAccepted(put(queues.get(i), futures.get(i), pending.get(i)), futures.get(i), i);
+        }
+      }
+    } finally {
+      // Every live partition must see its end marker, otherwise its thread waits forever
+      for (int i = 0; i < numPartitions; i++) {
+        put(queues.get(i), futures.get(i), END_OF_PARTITION);
+      }
+    }
+
+    long total = 0;
+    for (val future : futures) {
+      total += future.get();
+    }
+    log.info("Indexed {} variants over {} partitions", total, numPartitions);
+    return total;
+  }
+
+  private int getPartition(long variantId) {
+    return (int) Math.floorMod(variantId / blockSize, (long) numPartitions);
+  }
+
+  /**
+   * Blocks until the partition accepts the block, and returns false if the partition thread already stopped
+   * instead of waiting on a queue that nobody drains
+   */
+  @SneakyThrows
+  private static boolean put(BlockingQueue<List<VariantIdContext<Long>>> queue, Future<Long> future,
+      List<VariantIdContext<Long>> block) {
+    while (!queue.offer(block, OFFER_TIMEOUT_SECONDS, SECONDS)) {
+      if (future.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A partition only stops early when its writer failed, so that failure is rethrown
+   */
+  @SneakyThrows
+  private static void checkAccepted(boolean isAccepted, Future<Long> future, int partition) {
+    if (!isAccepted) {
+      future.get();
+      throw new IllegalStateException(
+          String.format("The indexing partition %s stopped before the end of the stream", partition));
+    }
+  }
+
+  @SneakyThrows
+  private long runPartition(BlockingQueue<List<VariantIdContext<Long>>> queue, CounterMonitor monitor) {
+    monitor.start();
+    try {
+      for (List<VariantIdContext<Long>> block = queue.take(); block != END_OF_PARTITION; block = queue.take()) {
+        for (val variantIdContext : block) {
+          variantWriter.accept(variantIdContext);
+          monitor.preIncr();
+        }
+      }
+      return monitor.getCount();
+    } finally {
+      monitor.stop();
+      monitor.displaySummary();
+    }
+  }
+
+  public static PartitionedVariantIndexer createPartitionedVariantIndexer(
+      Consumer<VariantIdContext<Long>> variantWriter, int numPartitions, int blockSize) {
+    checkArgument(numPartitions > 0, "The number of partitions [%s] must be greater than 0", numPartitions);
+    checkArgument(blockSize > 0, "The partition block size [%s] must be greater than 0", blockSize);
+    return new PartitionedVariantIndexer(variantWriter, numPartitions, blockSize);
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.indexing;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.common.GenomicBins.getRoutingKey;
+
+/**
+ * Routing of variant documents by genomic bin, see GenomicBins. A bin size of 0 keeps the default routing by id.
+ * Every writer of variant documents into an index must use the same bin size, since updates and deletes have to
+ * reach the shard the document was created on.
+ */
+@RequiredArgsConstructor(access = PRIVATE)
+public class VariantRouting {
+
+  private final long binSize;
+
+  public boolean isEnabled() {
+    return binSize > 0;
+  }
+
+  /**
+   * Routing key of the variant, or null to use the default routing
+   */
+  public String getRouting(@NonNull EsVariant esVariant) {
+    return isEnabled() ? getRoutingKey(esVariant.getReferenceName(), esVariant.getStart(), binSize) : null;
+  }
+
+  public static VariantRouting createVariantRouting(long binSize) {
+    checkArgument(binSize >= 0, "The routing bin size [%s] must not be negative", binSize);
+    return new VariantRouting(binSize);
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.persistance;
+
+import lombok.NonNull;
+import lombok.Value;
+import org.icgc.dcc.ga4gh.loader.LoaderModes;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Describes the last complete checkpoint: the index and loader mode of the load it belongs to, which checkpoint
+ * directory holds the aggregation state, and which files (by objectId) were fully processed or failed before it
+ * was taken.
+ */
+@Value
+public class CheckpointManifest implements Serializable {
+
+  private static final long serialVersionUID = 1508371201L;
+
+  @NonNull private final String indexName;
+  @NonNull private final LoaderModes loaderMode;
+  private final int sequence;
+  @NonNull private final String checkpointDirname;
+  @NonNull private final Set<String> completedObjectIds;
+  @NonNull private final Set<String> failedObjectIds;
+  private final long timestamp;
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.persistance;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
+import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
+import org.icgc.dcc.ga4gh.loader.CallSetAccumulator;
+import org.icgc.dcc.ga4gh.loader.LoaderModes;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.IdStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Sets.newConcurrentHashSet;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.isNull;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.common.core.util.stream.Collectors.toImmutableList;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SET_SERIALIZER;
+
+/**
+ * Periodically snapshots the state built while processing VCF files, so that an interrupted load can resume
+ * from the last checkpoint instead of starting over. Workers process files under a shared read lock, and a
+ * checkpoint takes the write lock, so a checkpoint never observes a partially processed file. A file only registers
+ * its variantSets and callSet and adds its calls to the VariantAggregator once it has been parsed successfully, so a
+ * failed file leaves nothing in a checkpoint, and retrying it on resume does not duplicate its calls.
+ * The manifest is written last with an atomic move, so a crash while checkpointing leaves the previous
+ * checkpoint intact. A checkpoint only resumes the load it was taken for, the same index and loader mode, and is
+ * deleted once that load completed.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class Checkpointer {
+
+  private static final String MANIFEST_FILENAME = "manifest.dat";
+  private static final String MANIFEST_TMP_FILENAME = MANIFEST_FILENAME + ".tmp";
+  private static final String CHECKPOINT_DIRNAME_FORMAT = "checkpoint-%06d";
+  private static final String VARIANT_SETS_FILENAME = "variantSets.dat";
+
+  private final Path dir;
+  private final int interval;
+  private final String indexName;
+  private final LoaderModes loaderMode;
+  @NonNull private final VariantAggregator variantAggregator;
+  @NonNull private final IdStorage<EsVariantSet, Integer> variantSetIdStorage;
+  @NonNull private final CallSetAccumulator callSetAccumulator;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Set<String> completedObjectIds = newConcurrentHashSet();
+  private final Set<String> failedObjectIds = newConcurrentHashSet();
+  private final AtomicInteger numSinceCheckpoint = new AtomicInteger(0);
+
+  private int sequence = 0;
+  private Path checkpointDir = null;
+
+  public Set<String> getCompletedObjectIds() {
+    return ImmutableSet.copyOf(completedObjectIds);
+  }
+
+  public boolean isEnabled() {
+    return !isNull(dir);
+  }
+
+  /**
+   * Runs the task for a file while holding the read lock, records whether it succeeded, and takes a checkpoint
+   * every interval files.
+   */
+  public boolean process(@NonNull PortalMetadata portalMetadata, @NonNull BooleanSupplier task) {
+    boolean success = false;
+    lock.readLock().lock();
+    try {
+      success = task.getAsBoolean();
+    } finally {
+      val objectId = portalMetadata.getObjectId();
+      if (success) {
+        completedObjectIds.add(objectId);
+        failedObjectIds.remove(objectId);
+      } else {
+        failedObjectIds.add(objectId);
+      }
+      lock.readLock().unlock();
+    }
+    if (isEnabled() && numSinceCheckpoint.incrementAndGet() >= interval) {
+      checkpoint();
+    }
+    return success;
+  }
+
+  @SneakyThrows
+  public synchronized void checkpoint() {
+    if (!isEnabled() || numSinceCheckpoint.get() == 0) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      val nextSequence = sequence + 1;
+      val nextCheckpointDir = dir.resolve(String.format(CHECKPOINT_DIRNAME_FORMAT, nextSequence));
+      deleteCheckpointDir(nextCheckpointDir);
+      Files.createDirectories(nextCheckpointDir);
+
+      log.info("Checkpointing {} completed files to [{}] ...", completedObjectIds.size(), nextCheckpointDir);
+      asCheckpointable(variantAggregator).checkpoint(nextCheckpointDir);
+      callSetAccumulator.checkpoint(nextCheckpointDir);
+      checkpointVariantSets(nextCheckpointDir.resolve(VARIANT_SETS_FILENAME));
+
+      val manifest = new CheckpointManifest(indexName, loaderMode, nextSequence, nextCheckpointDir.getFileName().toString(),
+          ImmutableSet.copyOf(completedObjectIds), ImmutableSet.copyOf(failedObjectIds), System.currentTimeMillis());
+      val tmpManifestPath = dir.resolve(MANIFEST_TMP_FILENAME);
+      ObjectPersistance.store(manifest, tmpManifestPath);
+      Files.move(tmpManifestPath, dir.resolve(MANIFEST_FILENAME), ATOMIC_MOVE, REPLACE_EXISTING);
+
+      deleteCheckpointDir(checkpointDir);
+      sequence = nextSequence;
+      checkpointDir = nextCheckpointDir;
+      numSinceCheckpoint.set(0);
+      log.info("Checkpoint {} COMPLETE", sequence);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Restores the state of the last complete checkpoint, if there is one.
+   * @return the objectIds of the files that were completely processed, and can be skipped
+   */
+  @SneakyThrows
+  public synchronized Set<String> restore() {
+    if (!isEnabled()) {
+      return ImmutableSet.of();
+    }
+    Files.createDirectories(dir);
+    val manifestPath = dir.resolve(MANIFEST_FILENAME);
+    if (!Files.exists(manifestPath)) {
+      log.info("No checkpoint found in [{}], starting from scratch", dir);
+      return ImmutableSet.of();
+    }
+    val manifest = (CheckpointManifest) ObjectPersistance.restore(manifestPath);
+    checkState(manifest.getIndexName().equals(indexName) && manifest.getLoaderMode() == loaderMode,
+        "The checkpoint in [%s] belongs to the index [%s] and the loader mode %s, not to [%s] and %s. Resume it with "
+            + "the same index_name and loader_mode, or delete the checkpoint_dir to start from scratch",
+        dir, manifest.getIndexName(), manifest.getLoaderMode(), indexName, loaderMode);
+    val restoredCheckpointDir = dir.resolve(manifest.getCheckpointDirname());
+    log.info("Restoring checkpoint {} from [{}] with {} completed and {} failed files", manifest.getSequence(),
+        restoredCheckpointDir, manifest.getCompletedObjectIds().size(), manifest.getFailedObjectIds().size());
+
+    asCheckpointable(variantAggregator).restore(restoredCheckpointDir);
+    callSetAccumulator.restore(restoredCheckpointDir);
+    restoreVariantSets(restoredCheckpointDir.resolve(VARIANT_SETS_FILENAME));
+
+    completedObjectIds.addAll(manifest.getCompletedObjectIds());
+    failedObjectIds.addAll(manifest.getFailedObjectIds());
+    sequence = manifest.getSequence();
+    checkpointDir = restoredCheckpointDir;
+    return ImmutableSet.copyOf(completedObjectIds);
+  }
+
+  /**
+   * Deletes the checkpoint once the load it belongs to is complete, so a later load does not resume from it
+   */
+  @SneakyThrows
+  public synchronized void delete() {
+    if (!isEnabled()) {
+      return;
+    }
+    Files.deleteIfExists(dir.resolve(MANIFEST_FILENAME));
+    Files.deleteIfExists(dir.resolve(MANIFEST_TMP_FILENAME));
+    deleteCheckpointDir(checkpointDir);
+    checkpointDir = null;
+    sequence = 0;
+    log.info("Deleted the checkpoint in [{}]", dir);
+  }
+
+  private void checkpointVariantSets(Path file) throws IOException {
+    val entries = variantSetIdStorage.streamEntries()
+        .sorted(comparing(Map.Entry::getValue))
+        .collect(toImmutableList());
+    val out = new DataOutput2();
+    out.packInt(entries.size());
+    for (val entry : entries) {
+      out.packInt(entry.getValue());
+      ES_VARIANT_SET_SERIALIZER.serialize(out, entry.getKey());
+    }
+    Files.write(file, out.copyBytes());
+  }
+
+  /**
+   * Re-adds the variant sets in id order, which reproduces the same ids since they are assigned sequentially.
+   * Variant sets that are already present, such as those read from an existing index, must have the same id.
+   */
+  private void restoreVariantSets(Path file) throws IOException {
+    val in = new DataInput2.ByteArray(Files.readAllBytes(file));
+    val size = in.unpackInt();
+    for (int i = 0; i < size; i++) {
+      val id = in.unpackInt();
+      val variantSet = ES_VARIANT_SET_SERIALIZER.deserialize(in, -1);
+      variantSetIdStorage.add(variantSet);
+      val restoredId = variantSetIdStorage.getId(variantSet);
+      checkState(restoredId == id, "The restored id [%s] for the variantSet [%s] does not match the checkpointed id [%s]",
+          restoredId, variantSet.getName(), id);
+    }
+  }
+
+  private static boolean isCheckpointable(VariantAggregator variantAggregator) {
+    return variantAggregator instanceof Checkpointable && ((Checkpointable) variantAggregator).isCheckpointable();
+  }
+
+  private static Checkpointable asCheckpointable(VariantAggregator variantAggregator) {
+    checkState(isCheckpointable(variantAggregator), "The VariantAggregator [%s] is not checkpointable",
+        variantAggregator.getClass().getSimpleName());
+    return (Checkpointable) variantAggregator;
+  }
+
+  private static void deleteCheckpointDir(Path checkpointDir) throws IOException {
+    if (isNull(checkpointDir) || !Files.isDirectory(checkpointDir)) {
+      return;
+    }
+    try (val files = Files.list(checkpointDir)) {
+      for (val file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(checkpointDir);
+  }
+
+  public static Checkpointer createCheckpointer(@NonNull Path dir, int interval, @NonNull String indexName,
+      @NonNull LoaderModes loaderMode, VariantAggregator variantAggregator,
+      IdStorage<EsVariantSet, Integer> variantSetIdStorage, CallSetAccumulator callSetAccumulator) {
+    checkArgument(interval > 0, "The checkpoint interval [%s] must be greater than 0", interval);
+    checkArgument(isCheckpointable(variantAggregator),
+        "The VariantAggregator [%s] cannot be checkpointed. Use the APPEND_ONLY or SORT_MERGE aggregator mode",
+        variantAggregator.getClass().getSimpleName());
+    return new Checkpointer(dir, interval, indexName, loaderMode, variantAggregator, variantSetIdStorage,
+        callSetAccumulator);
+  }
+
+  public static Checkpointer createDisabledCheckpointer(VariantAggregator variantAggregator,
+      IdStorage<EsVariantSet, Integer> variantSetIdStorage, CallSetAccumulator callSetAccumulator) {
+    return new Checkpointer(null, 1, null, null, variantAggregator, variantSetIdStorage, callSetAccumulator);
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.persistance;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Records which files (by objectId) are loaded into an index, so that an incremental load only processes the
+ * files that were published since.
+ */
+@Value
+public class LoadedFilesManifest implements Serializable {
+
+  private static final long serialVersionUID = 1508371200L;
+
+  @NonNull private final String indexName;
+  @NonNull private final Set<String> objectIds;
+  private final long timestamp;
+
+  public LoadedFilesManifest merge(@NonNull Set<String> newObjectIds) {
+    val merged = ImmutableSet.<String>builder()
+        .addAll(objectIds)
+        .addAll(newObjectIds)
+        .build();
+    return createLoadedFilesManifest(indexName, merged);
+  }
+
+  public static LoadedFilesManifest createLoadedFilesManifest(String indexName, Set<String> objectIds) {
+    return new LoadedFilesManifest(indexName, ImmutableSet.copyOf(objectIds), System.currentTimeMillis());
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.storage;
+
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Sidecar cache of verified MD5 checksums. For every file, a "&lt;filename&gt;.md5" file records the checksum
+ * together with the size and modification time the file had when it was hashed. As long as the size and mtime
+ * are unchanged, the cached checksum is returned instead of rehashing the file.
+ */
+@Slf4j
+@NoArgsConstructor(access = PRIVATE)
+public final class Md5SumCache {
+
+  public static final String SIDECAR_EXTENSION = ".md5";
+  private static final String SEPARATOR = "\t";
+
+  public static boolean isSidecar(@NonNull Path file) {
+    return file.getFileName().toString().endsWith(SIDECAR_EXTENSION);
+  }
+
+  /**
+   * Returns the cached checksum of the file if it is still valid, otherwise hashes the file and caches the result.
+   */
+  @SneakyThrows
+  public static String getMd5Sum(@NonNull Path file) {
+    val cached = readCachedMd5Sum(file);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    val md5Sum = Storage.calcMd5Sum(file);
+    putMd5Sum(file, md5Sum);
+    return md5Sum;
+  }
+
+  /**
+   * Records an already computed checksum, for example one computed while downloading the file. The cache is only an
+   * optimization, so a directory that can not be written to (for example a read-only input directory) is logged and
+   * the file is simply hashed again next time.
+   */
+  public static void putMd5Sum(@NonNull Path file, @NonNull String md5Sum) {
+    val sidecar = getSidecar(file);
+    val tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+    try {
+      val line = md5Sum + SEPARATOR + Files.size(file) + SEPARATOR + Files.getLastModifiedTime(file).toMillis();
+      Files.write(tmp, line.getBytes(UTF_8));
+      Files.move(tmp, sidecar, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Could not cache the checksum of [{}] in [{}]: {}", file, sidecar, e.toString());
+      deleteQuietly(tmp);
+    }
+  }
+
+  @SneakyThrows
+  public static Optional<String> readCachedMd5Sum(@NonNull Path file) {
+    val sidecar = getSidecar(file);
+    if (!Files.isRegularFile(sidecar) || !Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    val fields = new String(Files.readAllBytes(sidecar), UTF_8).trim().split(SEPARATOR);
+    if (fields.length != 3) {
+      log.warn("Ignoring malformed checksum sidecar [{}]", sidecar);
+      return Optional.empty();
+    }
+    val size = Long.parseLong(fields[1]);
+    val mtime = Long.parseLong(fields[2]);
+    val isValid = size == Files.size(file) && mtime == Files.getLastModifiedTime(file).toMillis();
+    return isValid ? Optional.of(fields[0]) : Optional.empty();
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Could not delete [{}]: {}", file, e.toString());
+    }
+  }
+
+  private static Path getSidecar(Path file) {
+    return file.resolveSibling(file.getFileName() + SIDECAR_EXTENSION);
+  }
+
+}
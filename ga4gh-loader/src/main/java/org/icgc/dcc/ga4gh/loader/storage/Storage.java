@@ -19,13 +19,12 @@
 package org.icgc.dcc.ga4gh.loader.storage;
 
 import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import lombok.NonNull;
-import lombok.val;
 import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -34,13 +33,17 @@ public interface Storage {
 
   File getFile(@NonNull PortalMetadata portalMetadata);
 
+  /**
+   * Called once the consumer is done with a file returned by getFile, so that implementations can delete
+   * files they do not persist.
+   */
+  default void releaseFile(@NonNull PortalMetadata portalMetadata, @NonNull File file) {
+  }
+
   static String calcMd5Sum(@NonNull Path file) throws IOException {
     checkState(file.toFile().isFile(), "The input path [%s] is not a file", file);
-    val bytes = Files.readAllBytes(file);
-    return Hashing.md5()
-        .newHasher()
-        .putBytes(bytes)
-        .hash()
+    return Files.asByteSource(file.toFile())
+        .hash(Hashing.md5())
         .toString();
   }
 
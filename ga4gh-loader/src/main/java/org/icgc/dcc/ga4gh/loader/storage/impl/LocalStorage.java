@@ -43,6 +43,8 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
 import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.storage.Md5SumCache.getMd5Sum;
+import static org.icgc.dcc.ga4gh.loader.storage.Md5SumCache.isSidecar;
 
 @RequiredArgsConstructor(access = PRIVATE)
 @Slf4j
@@ -62,7 +64,7 @@ public class LocalStorage implements Storage {
       if (bypassMd5Check){
         return file.toFile();
       } else {
-        val sum = Storage.calcMd5Sum(file);
+        val sum = getMd5Sum(file);
         checkState(sum.equals(portalMetadata.getFileMd5sum()),
             "The local file [%s] MD5CheckSum[%s], expecting[%s] from portal",
             file.getFileName(), sum, portalMetadata.getFileMd5sum());
@@ -100,6 +102,9 @@ public class LocalStorage implements Storage {
     }
 
     @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      if (isSidecar(file)){
+        return CONTINUE;
+      }
       val filename = file.getFileName().toString();
       try{
         val portalFilename = PortalFilename.createPortalFilename(filename);
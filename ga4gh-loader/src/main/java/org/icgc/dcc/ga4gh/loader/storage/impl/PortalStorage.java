@@ -18,6 +18,7 @@
 package org.icgc.dcc.ga4gh.loader.storage.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.hash.HashingInputStream;
 import lombok.Cleanup;
 import lombok.NonNull;
 import lombok.SneakyThrows;
@@ -35,12 +36,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.hash.Hashing.md5;
 import static com.google.common.net.HttpHeaders.AUTHORIZATION;
 import static java.nio.file.Files.copy;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.icgc.dcc.common.core.json.Jackson.DEFAULT;
 import static org.icgc.dcc.ga4gh.loader.Config.STORAGE_API;
-import static org.icgc.dcc.ga4gh.loader.storage.Storage.calcMd5Sum;
+import static org.icgc.dcc.ga4gh.loader.storage.Md5SumCache.getMd5Sum;
+import static org.icgc.dcc.ga4gh.loader.storage.Md5SumCache.putMd5Sum;
 
 @Value
 @Slf4j
@@ -51,10 +54,6 @@ public class PortalStorage implements Storage {
 
   private final Path outputDir;
 
-  private final long currentTime;
-
-  private final Path tempFile;
-
   private final boolean bypassMD5Check;
 
   private final String token;
@@ -65,8 +64,6 @@ public class PortalStorage implements Storage {
     this.token = token;
     this.outputDir = outputDir.toAbsolutePath();
     initDir(outputDir);
-    this.currentTime = System.currentTimeMillis();
-    this.tempFile = createTempFile(outputDir);
   }
 
   private void checkForParentDir(@NonNull Path file) {
@@ -79,16 +76,24 @@ public class PortalStorage implements Storage {
         absoluteFile, outputDir);
   }
 
-  // Download file regardless of persist mode
+  // Download file regardless of persist mode. The checksum is computed while copying, so the file is never re-read
   @SneakyThrows
-  private File downloadFileByObjectId(@NonNull final String objectId, @NonNull final String filename) {
+  private File downloadFileByObjectId(@NonNull final String objectId, @NonNull final String filename,
+      @NonNull final String expectedMD5Sum) {
     val objectUrl = getObjectUrl(STORAGE_API,objectId);
     val output = Paths.get(filename);
 
     @Cleanup
-    val input = objectUrl.openStream();
+    val input = new HashingInputStream(md5(), objectUrl.openStream());
     copy(input, output, REPLACE_EXISTING);
+    val md5Sum = input.hash().toString();
 
+    checkState(bypassMD5Check || md5Sum.equals(expectedMD5Sum),
+        "The downloaded file [%s] MD5CheckSum[%s], expecting[%s] from portal",
+        output, md5Sum, expectedMD5Sum);
+    if (persist) {
+      putMd5Sum(output, md5Sum);
+    }
     return output.toFile();
   }
 
@@ -102,17 +107,29 @@ public class PortalStorage implements Storage {
     val absFilename = absFile.toString();
     checkForParentDir(absFile);
     initParentDir(absFile);
-    val fileExists = Files.exists(absFile);
-    val md5Match = bypassMD5Check || (fileExists && calcMd5Sum(absFile).equals(expectedMD5Sum)); // Short circuit
     if (persist) {
+      val fileExists = Files.exists(absFile);
+      val md5Match = bypassMD5Check || (fileExists && getMd5Sum(absFile).equals(expectedMD5Sum)); // Short circuit
       if (md5Match) {
         log.info("File [{}] already exists and matches checksum. Skipping download.", absFile);
         return absFile.toFile();
       } else {
-        return downloadFileByObjectId(objectId, absFilename);
+        return downloadFileByObjectId(objectId, absFilename, expectedMD5Sum);
       }
     } else {
-      return downloadFileByObjectId(objectId, tempFile.toAbsolutePath().toString());
+      // Unique per download, so that concurrent workers never share a temp file
+      return downloadFileByObjectId(objectId, createTempFile(outputDir).toAbsolutePath().toString(),
+          expectedMD5Sum);
+    }
+  }
+
+  /**
+   * Temp files are not reused between loads, so delete them as soon as they have been processed
+   */
+  @Override @SneakyThrows
+  public void releaseFile(@NonNull final PortalMetadata portalMetadata, @NonNull final File file) {
+    if (!persist) {
+      Files.deleteIfExists(file.toPath());
     }
   }
 
@@ -136,9 +153,9 @@ public class PortalStorage implements Storage {
     return DEFAULT.readTree(connection.getInputStream());
   }
 
+  @SneakyThrows
   private static Path createTempFile(Path outputDir){
-    val filename = "tmp." + System.currentTimeMillis() + ".vcf.gz";
-    val path = outputDir.resolve(filename);
+    val path = Files.createTempFile(outputDir, "tmp.", ".vcf.gz");
     path.toFile().deleteOnExit();
     return path;
   }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.storage.impl;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.portal.PortalFilename;
+import org.icgc.dcc.ga4gh.common.model.portal.PortalMetadata;
+import org.icgc.dcc.ga4gh.loader.storage.Storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.collect.ImmutableList.copyOf;
+import static com.google.common.collect.Sets.newConcurrentHashSet;
+import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Storage decorator that downloads the next numPrefetch files in the background, while the
+ * caller is parsing the current one. Back-pressure is applied in two ways: no more than numPrefetch
+ * files can be downloaded ahead of the consumer, and the total size of the files on disk, from the start of
+ * their download until they are released through releaseFile, cannot exceed maxPrefetchBytes. A single file
+ * larger than the budget is still fetched, but only once nothing else is outstanding.
+ */
+@Slf4j
+public class PrefetchingStorage implements Storage, Closeable {
+
+  private static final String SCHEDULER_NAME = "vcf-prefetch-scheduler";
+  private static final String DOWNLOADER_NAME_FORMAT = "vcf-prefetch-%d";
+
+  @NonNull private final Storage storage;
+  @NonNull private final List<PortalMetadata> portalMetadatas;
+  private final long maxPrefetchBytes;
+
+  private final Semaphore windowPermits;
+  private final Map<PortalFilename, SettableFuture<File>> prefetched;
+  private final Set<PortalFilename> claimed = newConcurrentHashSet();
+  private final Map<PortalFilename, Long> claimedBytes = new ConcurrentHashMap<>();
+  private final ExecutorService scheduler;
+  private final ExecutorService downloaders;
+
+  /**
+   * State
+   */
+  private long outstandingBytes = 0;
+
+  private PrefetchingStorage(Storage storage, List<PortalMetadata> portalMetadatas,
+      final int numPrefetch, final long maxPrefetchBytes) {
+    checkArgument(numPrefetch > 0, "The number of files to prefetch [%s] must be greater than 0", numPrefetch);
+    checkArgument(maxPrefetchBytes > 0, "The prefetch disk budget [%s] must be greater than 0", maxPrefetchBytes);
+    this.storage = storage;
+    this.portalMetadatas = copyOf(portalMetadatas);
+    this.prefetched = this.portalMetadatas.stream()
+        .collect(collectingAndThen(toMap(PortalMetadata::getPortalFilename, x -> SettableFuture.<File>create(),
+            (a, b) -> a), Collections::unmodifiableMap));
+    this.maxPrefetchBytes = maxPrefetchBytes;
+    this.windowPermits = new Semaphore(numPrefetch);
+    this.scheduler = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat(SCHEDULER_NAME).build());
+    this.downloaders = Executors.newFixedThreadPool(numPrefetch,
+        new ThreadFactoryBuilder().setNameFormat(DOWNLOADER_NAME_FORMAT).build());
+  }
+
+  /**
+   * Starts downloading the portalMetadatas in order, in the background.
+   */
+  public void start() {
+    scheduler.submit(this::schedule);
+  }
+
+  private void schedule() {
+    val scheduled = Sets.<PortalFilename>newHashSet();
+    try {
+      for (val portalMetadata : portalMetadatas) {
+        val future = prefetched.get(portalMetadata.getPortalFilename());
+        if (!scheduled.add(portalMetadata.getPortalFilename()) || future.isDone()) {
+          continue;
+        }
+        windowPermits.acquire();
+        acquireBytes(portalMetadata.getFileSize());
+        downloaders.submit(() -> download(portalMetadata, future));
+      }
+    } catch (InterruptedException e) {
+      log.info("Prefetching interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void download(PortalMetadata portalMetadata, SettableFuture<File> future) {
+    try {
+      future.set(storage.getFile(portalMetadata));
+    } catch (Throwable t) {
+      future.setException(t);
+    }
+  }
+
+  private synchronized void acquireBytes(final long numBytes) throws InterruptedException {
+    while (outstandingBytes > 0 && outstandingBytes + numBytes > maxPrefetchBytes) {
+      wait();
+    }
+    outstandingBytes += numBytes;
+  }
+
+  private synchronized void releaseBytes(final long numBytes) {
+    outstandingBytes -= numBytes;
+    notifyAll();
+  }
+
+  /**
+   * Returns the prefetched file, waiting for its download to complete if necessary. Files that were
+   * not registered for prefetching are downloaded synchronously. The disk budget of a prefetched file stays
+   * held until the file is passed to releaseFile.
+   */
+  @Override
+  @SneakyThrows
+  public File getFile(@NonNull PortalMetadata portalMetadata) {
+    val portalFilename = portalMetadata.getPortalFilename();
+    val future = prefetched.get(portalFilename);
+    if (future == null || !claimed.add(portalFilename)) {
+      log.warn("File [{}] was not prefetched. Downloading synchronously.", portalFilename.getFilename());
+      return storage.getFile(portalMetadata);
+    }
+    try {
+      val file = future.get();
+      claimedBytes.put(portalFilename, portalMetadata.getFileSize());
+      return file;
+    } catch (ExecutionException e) {
+      releaseBytes(portalMetadata.getFileSize());
+      throw propagate(e.getCause());
+    } finally {
+      windowPermits.release();
+    }
+  }
+
+  /**
+   * Releases the file through the underlying storage first, so that the budget is only returned once a
+   * non-persisted file has actually been deleted.
+   */
+  @Override
+  public void releaseFile(@NonNull PortalMetadata portalMetadata, @NonNull File file) {
+    try {
+      storage.releaseFile(portalMetadata, file);
+    } finally {
+      val numBytes = claimedBytes.remove(portalMetadata.getPortalFilename());
+      if (numBytes != null) {
+        releaseBytes(numBytes);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    downloaders.shutdownNow();
+    prefetched.values().forEach(x -> x.cancel(true));
+  }
+
+  public static PrefetchingStorage createPrefetchingStorage(Storage storage, List<PortalMetadata> portalMetadatas,
+      final int numPrefetch, final long maxPrefetchBytes) {
+    return new PrefetchingStorage(storage, portalMetadatas, numPrefetch, maxPrefetchBytes);
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.columnar;
+
+import lombok.NoArgsConstructor;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.MapDBSerialzers.StringObjectMapSerializer;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+
+import java.io.IOException;
+
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Layout of the columnar variant file:
+ * <pre>
+ *   header:  [long MAGIC][int VERSION]
+ *   chunk*:  [int compressedSize][int rawSize][deflated columns]
+ *   footer:  [int numChunks] ([long chunkOffset][int numVariants])*
+ *   trailer: [long footerOffset][long MAGIC]
+ * </pre>
+ * Inside a chunk every column is written contiguously: ids, a reference name dictionary followed by
+ * the dictionary index of every variant, start deltas, end minus start, reference bases, alternative bases,
+ * number of calls per variant, and then the call columns (call set ids, a call set name dictionary and
+ * indices, variant set ids and info maps). Bases are packed 2 bits per base when they only contain ACGT. The ids
+ * are written as packed deltas when they are close to each other, as sequential ids are, and as fixed 8 byte values
+ * otherwise, since deltas of the content hash ids take more space than the ids themselves.
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class ColumnarFormat {
+
+  static final long MAGIC = 0x4741344748434f4cL; // "GA4GHCOL"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+  static final int CHUNK_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+  static final int TRAILER_SIZE = Long.BYTES + Long.BYTES;
+  static final int FOOTER_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+
+  static final StringObjectMapSerializer INFO_SERIALIZER = new StringObjectMapSerializer();
+
+  static final int DELTA_IDS = 0;
+  static final int FIXED_IDS = 1;
+
+  private static final int PACKED = 0;
+  private static final int RAW = 1;
+  private static final String BASES = "ACGT";
+
+  static int zigZag(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  static int unZigZag(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Number of bytes DataOutput2.packLong writes for the value, 7 bits per byte
+   */
+  static int getPackedSize(final long value) {
+    val numBits = Long.SIZE - Long.numberOfLeadingZeros(value);
+    return Math.max(1, (numBits + 6) / 7);
+  }
+
+  static void writeBases(DataOutput2 out, String bases) throws IOException {
+    val length = bases.length();
+    if (!isPackable(bases)) {
+      out.packInt((length << 1) | RAW);
+      for (int i = 0; i < length; i++) {
+        out.writeByte(bases.charAt(i));
+      }
+      return;
+    }
+    out.packInt((length << 1) | PACKED);
+    int current = 0;
+    for (int i = 0; i < length; i++) {
+      current |= BASES.indexOf(bases.charAt(i)) << (2 * (i % 4));
+      if (i % 4 == 3) {
+        out.writeByte(current);
+        current = 0;
+      }
+    }
+    if (length % 4 != 0) {
+      out.writeByte(current);
+    }
+  }
+
+  static String readBases(DataInput2 in) throws IOException {
+    val header = in.unpackInt();
+    val length = header >>> 1;
+    val sb = new StringBuilder(length);
+    if ((header & 1) == RAW) {
+      for (int i = 0; i < length; i++) {
+        sb.append((char) in.readUnsignedByte());
+      }
+      return sb.toString();
+    }
+    int current = 0;
+    for (int i = 0; i < length; i++) {
+      if (i % 4 == 0) {
+        current = in.readUnsignedByte();
+      }
+      sb.append(BASES.charAt((current >>> (2 * (i % 4))) & 3));
+    }
+    return sb.toString();
+  }
+
+  private static boolean isPackable(String bases) {
+    for (int i = 0; i < bases.length(); i++) {
+      if (BASES.indexOf(bases.charAt(i)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.columnar;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
+import org.mapdb.DataInput2;
+import org.mapdb.Serializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair.createEsVariantCallPair;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.CHUNK_HEADER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.FOOTER_ENTRY_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.HEADER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.INFO_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.DELTA_IDS;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.FIXED_IDS;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.MAGIC;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.TRAILER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.VERSION;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.readBases;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.unZigZag;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext.createVariantIdContext;
+
+/**
+ * Replays a file written by the ColumnarVariantWriter. Chunks are memory mapped one at a time and decoded
+ * lazily, in the order they were written.
+ */
+@Slf4j
+public class ColumnarVariantReader implements Closeable {
+
+  @NonNull private final Path inputFile;
+  private final FileChannel channel;
+  private final long[] chunkOffsets;
+  private final int[] chunkNumVariants;
+
+  @SneakyThrows
+  private ColumnarVariantReader(Path inputFile) {
+    this.inputFile = inputFile;
+    this.channel = FileChannel.open(inputFile, READ);
+    val size = channel.size();
+    checkState(size >= HEADER_SIZE + Integer.BYTES + TRAILER_SIZE, "The file [%s] is too small", inputFile);
+
+    val header = channel.map(READ_ONLY, 0, HEADER_SIZE);
+    checkState(header.getLong() == MAGIC, "The file [%s] is not a columnar variant file", inputFile);
+    val version = header.getInt();
+    checkState(version == VERSION, "Unsupported columnar variant file version [%s] for [%s]", version, inputFile);
+
+    val trailer = channel.map(READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+    val footerOffset = trailer.getLong();
+    checkState(trailer.getLong() == MAGIC, "The file [%s] is truncated", inputFile);
+
+    val footer = channel.map(READ_ONLY, footerOffset, size - TRAILER_SIZE - footerOffset);
+    val numChunks = footer.getInt();
+    checkState(footer.remaining() == numChunks * FOOTER_ENTRY_SIZE, "The footer of [%s] is corrupt", inputFile);
+    this.chunkOffsets = new long[numChunks];
+    this.chunkNumVariants = new int[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      chunkOffsets[i] = footer.getLong();
+      chunkNumVariants[i] = footer.getInt();
+    }
+  }
+
+  public int getNumChunks() {
+    return chunkOffsets.length;
+  }
+
+  public long getNumVariants() {
+    long total = 0;
+    for (val n : chunkNumVariants) {
+      total += n;
+    }
+    return total;
+  }
+
+  public Stream<VariantIdContext<Long>> streamVariantIdContext() {
+    return IntStream.range(0, chunkOffsets.length)
+        .mapToObj(this::readChunk)
+        .flatMap(List::stream);
+  }
+
+  @SneakyThrows
+  private List<VariantIdContext<Long>> readChunk(final int chunk) {
+    val offset = chunkOffsets[chunk];
+    val chunkHeader = channel.map(READ_ONLY, offset, CHUNK_HEADER_SIZE);
+    val compressedSize = chunkHeader.getInt();
+    val rawSize = chunkHeader.getInt();
+    val compressed = new byte[compressedSize];
+    channel.map(READ_ONLY, offset + CHUNK_HEADER_SIZE, compressedSize).get(compressed);
+
+    val raw = new byte[rawSize];
+    val inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      val numInflated = inflater.inflate(raw);
+      checkState(numInflated == rawSize, "Chunk [%s] of [%s] is corrupt", chunk, inputFile);
+    } finally {
+      inflater.end();
+    }
+    val contexts = decodeColumns(new DataInput2.ByteArray(raw));
+    checkState(contexts.size() == chunkNumVariants[chunk], "Chunk [%s] of [%s] is corrupt", chunk, inputFile);
+    return contexts;
+  }
+
+  private static long[] readIdColumn(DataInput2 in, int numVariants) throws IOException {
+    val ids = new long[numVariants];
+    val idEncoding = in.unpackInt();
+    if (idEncoding == FIXED_IDS) {
+      for (int i = 0; i < numVariants; i++) {
+        ids[i] = in.readLong();
+      }
+    } else {
+      checkState(idEncoding == DELTA_IDS, "Unknown id encoding [%s]", idEncoding);
+      long previousId = 0;
+      for (int i = 0; i < numVariants; i++) {
+        ids[i] = previousId + unZigZag(in.unpackLong());
+        previousId = ids[i];
+      }
+    }
+    return ids;
+  }
+
+  private static List<VariantIdContext<Long>> decodeColumns(DataInput2 in) throws IOException {
+    val numVariants = in.unpackInt();
+
+    val ids = readIdColumn(in, numVariants);
+
+    val referenceNames = readDictionaryColumn(in, numVariants);
+
+    val starts = new int[numVariants];
+    int previousStart = 0;
+    for (int i = 0; i < numVariants; i++) {
+      starts[i] = previousStart + unZigZag(in.unpackInt());
+      previousStart = starts[i];
+    }
+
+    val ends = new int[numVariants];
+    for (int i = 0; i < numVariants; i++) {
+      ends[i] = starts[i] + unZigZag(in.unpackInt());
+    }
+
+    val referenceBases = new String[numVariants];
+    for (int i = 0; i < numVariants; i++) {
+      referenceBases[i] = readBases(in);
+    }
+
+    final List<List<String>> alternativeBases = newArrayListWithCapacity(numVariants);
+    for (int i = 0; i < numVariants; i++) {
+      val numAlternatives = in.unpackInt();
+      final List<String> bases = newArrayListWithCapacity(numAlternatives);
+      for (int j = 0; j < numAlternatives; j++) {
+        bases.add(readBases(in));
+      }
+      alternativeBases.add(bases);
+    }
+
+    val numCallsPerVariant = new int[numVariants];
+    int numCalls = 0;
+    for (int i = 0; i < numVariants; i++) {
+      numCallsPerVariant[i] = in.unpackInt();
+      numCalls += numCallsPerVariant[i];
+    }
+
+    val callSetIds = new int[numCalls];
+    for (int i = 0; i < numCalls; i++) {
+      callSetIds[i] = in.unpackInt();
+    }
+
+    val callSetNames = readDictionaryColumn(in, numCalls);
+
+    final List<List<Integer>> variantSetIds = newArrayListWithCapacity(numCalls);
+    for (int i = 0; i < numCalls; i++) {
+      val size = in.unpackInt();
+      final List<Integer> callVariantSetIds = newArrayListWithCapacity(size);
+      for (int j = 0; j < size; j++) {
+        callVariantSetIds.add(in.unpackInt());
+      }
+      variantSetIds.add(callVariantSetIds);
+    }
+
+    final List<VariantIdContext<Long>> contexts = newArrayListWithCapacity(numVariants);
+    int call = 0;
+    for (int i = 0; i < numVariants; i++) {
+      val variant = EsVariant.builder()
+          .referenceName(referenceNames[i])
+          .start(starts[i])
+          .end(ends[i])
+          .referenceBases(referenceBases[i])
+          .alternativeBases(alternativeBases.get(i))
+          .build();
+      final List<EsConsensusCall> calls = newArrayList();
+      for (int j = 0; j < numCallsPerVariant[i]; j++, call++) {
+        calls.add(EsConsensusCall.builder()
+            .callSetId(callSetIds[call])
+            .callSetName(callSetNames[call])
+            .variantSetIds(variantSetIds.get(call))
+            .info(INFO_SERIALIZER.deserialize(in, -1))
+            .build());
+      }
+      contexts.add(createVariantIdContext(ids[i], createEsVariantCallPair(variant, calls)));
+    }
+    return contexts;
+  }
+
+  private static String[] readDictionaryColumn(DataInput2 in, final int numValues) throws IOException {
+    val dictionary = new String[in.unpackInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = Serializer.STRING.deserialize(in, -1);
+    }
+    val values = new String[numValues];
+    for (int i = 0; i < numValues; i++) {
+      values[i] = dictionary[in.unpackInt()];
+    }
+    return values;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  public static ColumnarVariantReader createColumnarVariantReader(Path inputFile) {
+    return new ColumnarVariantReader(inputFile);
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.columnar;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorage;
+import org.mapdb.Serializer;
+
+import java.nio.file.Path;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CALL_SET_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SET_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.utils.CheckPaths.checkFilePath;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantReader.createColumnarVariantReader;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantWriter.createColumnarVariantWriter;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorageFactory.createMapStorageFactory;
+import static org.mapdb.Serializer.INTEGER;
+
+/**
+ * Directory holding everything needed to rebuild the index without re-parsing the VCF files: the columnar
+ * variant file, and the persisted variant sets and call sets.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class ColumnarVariantStore {
+
+  private static final String VARIANTS_FILENAME = "variants.col";
+  private static final String VARIANT_SETS_NAME = "variantSets";
+  private static final String CALL_SETS_NAME = "callSets";
+
+  @NonNull private final Path dir;
+  private final int chunkSize;
+
+  public Path getVariantsPath() {
+    return dir.resolve(VARIANTS_FILENAME);
+  }
+
+  public ColumnarVariantWriter createWriter() {
+    return createColumnarVariantWriter(getVariantsPath(), chunkSize);
+  }
+
+  public ColumnarVariantReader createReader() {
+    checkFilePath(getVariantsPath());
+    return createColumnarVariantReader(getVariantsPath());
+  }
+
+  public void storeVariantSets(MapStorage<EsVariantSet, Integer> variantSets) {
+    store(VARIANT_SETS_NAME, ES_VARIANT_SET_SERIALIZER, variantSets);
+  }
+
+  public void storeCallSets(MapStorage<EsCallSet, Integer> callSets) {
+    store(CALL_SETS_NAME, ES_CALL_SET_SERIALIZER, callSets);
+  }
+
+  public MapStorage<EsVariantSet, Integer> restoreVariantSets() {
+    return restore(VARIANT_SETS_NAME, ES_VARIANT_SET_SERIALIZER);
+  }
+
+  public MapStorage<EsCallSet, Integer> restoreCallSets() {
+    return restore(CALL_SETS_NAME, ES_CALL_SET_SERIALIZER);
+  }
+
+  private <K> void store(String name, Serializer<K> keySerializer, MapStorage<K, Integer> source) {
+    try (val target = createMapStorageFactory(name, keySerializer, INTEGER, dir, -1).createDiskMapStorage(true)) {
+      val map = target.getMap();
+      map.clear();
+      map.putAll(source.getMap());
+      log.info("Stored {} entries of [{}] to [{}]", map.size(), name, dir);
+    } catch (Exception e) {
+      throw new IllegalStateException(String.format("Could not store [%s] to [%s]", name, dir), e);
+    }
+  }
+
+  private <K> MapStorage<K, Integer> restore(String name, Serializer<K> keySerializer) {
+    val mapStorageFactory = createMapStorageFactory(name, keySerializer, INTEGER, dir, -1);
+    checkFilePath(mapStorageFactory.getPath());
+    return mapStorageFactory.createDiskMapStorage(true);
+  }
+
+  public static ColumnarVariantStore createColumnarVariantStore(Path dir, final int chunkSize) {
+    return new ColumnarVariantStore(dir, chunkSize);
+  }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.columnar;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.CHUNK_HEADER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.HEADER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.INFO_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.DELTA_IDS;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.FIXED_IDS;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.MAGIC;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.VERSION;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.getPackedSize;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.writeBases;
+import static org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarFormat.zigZag;
+
+/**
+ * Writes aggregated variants and their calls to a chunked, columnar and deflated file, that can be replayed by
+ * the ColumnarVariantReader. The file is written to a temporary path and moved in place on close, so a partially
+ * written file is never mistaken for a complete one.
+ */
+@Slf4j
+public class ColumnarVariantWriter implements Closeable {
+
+  private static final int IO_BUFFER_SIZE = 1 << 20;
+  private static final String TMP_EXTENSION = ".tmp";
+
+  @NonNull private final Path outputFile;
+  @NonNull private final Path tmpFile;
+  private final int chunkSize;
+  private final DataOutputStream output;
+  private final Deflater deflater = new Deflater();
+
+  /**
+   * State
+   */
+  private final List<VariantIdContext<Long>> buffer = newArrayList();
+  private final List<Long> chunkOffsets = newArrayList();
+  private final List<Integer> chunkNumVariants = newArrayList();
+  private final DataOutput2 columns = new DataOutput2();
+  private byte[] compressed = new byte[0];
+  private long position;
+  private long numVariants = 0;
+  private boolean closed = false;
+
+  @SneakyThrows
+  private ColumnarVariantWriter(Path outputFile, final int chunkSize) {
+    checkArgument(chunkSize > 0, "The chunkSize [%s] must be greater than 0", chunkSize);
+    this.outputFile = outputFile;
+    this.tmpFile = outputFile.resolveSibling(outputFile.getFileName() + TMP_EXTENSION);
+    this.chunkSize = chunkSize;
+    val parent = outputFile.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), IO_BUFFER_SIZE));
+    output.writeLong(MAGIC);
+    output.writeInt(VERSION);
+    this.position = HEADER_SIZE;
+  }
+
+  public synchronized void write(@NonNull VariantIdContext<Long> variantIdContext) {
+    checkState(!closed, "The writer for [%s] is closed", outputFile);
+    buffer.add(variantIdContext);
+    if (buffer.size() >= chunkSize) {
+      flushChunk();
+    }
+  }
+
+  @SneakyThrows
+  private void flushChunk() {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    columns.pos = 0;
+    encodeColumns(columns, buffer);
+
+    deflater.reset();
+    deflater.setInput(columns.buf, 0, columns.pos);
+    deflater.finish();
+    val maxSize = columns.pos + (columns.pos >> 3) + 64;
+    if (compressed.length < maxSize) {
+      compressed = new byte[maxSize];
+    }
+    int compressedSize = 0;
+    while (!deflater.finished()) {
+      if (compressedSize == compressed.length) {
+        val grown = new byte[compressed.length * 2];
+        System.arraycopy(compressed, 0, grown, 0, compressedSize);
+        compressed = grown;
+      }
+      compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+    }
+
+    chunkOffsets.add(position);
+    chunkNumVariants.add(buffer.size());
+    output.writeInt(compressedSize);
+    output.writeInt(columns.pos);
+    output.write(compressed, 0, compressedSize);
+    position += CHUNK_HEADER_SIZE + compressedSize;
+    numVariants += buffer.size();
+    buffer.clear();
+  }
+
+  private static void writeIdColumn(DataOutput2 out, List<VariantIdContext<Long>> contexts) throws IOException {
+    long deltaSize = 0;
+    long previousId = 0;
+    for (val context : contexts) {
+      deltaSize += getPackedSize(zigZag(context.getId() - previousId));
+      previousId = context.getId();
+    }
+
+    if (deltaSize < (long) Long.BYTES * contexts.size()) {
+      out.packInt(DELTA_IDS);
+      previousId = 0;
+      for (val context : contexts) {
+        out.packLong(zigZag(context.getId() - previousId));
+        previousId = context.getId();
+      }
+    } else {
+      out.packInt(FIXED_IDS);
+      for (val context : contexts) {
+        out.writeLong(context.getId());
+      }
+    }
+  }
+
+  private static void encodeColumns(DataOutput2 out, List<VariantIdContext<Long>> contexts) throws IOException {
+    out.packInt(contexts.size());
+
+    writeIdColumn(out, contexts);
+
+    writeDictionaryColumn(out, contexts, x -> x.getEsVariantCallPair().getVariant().getReferenceName());
+
+    int previousStart = 0;
+    for (val context : contexts) {
+      val start = context.getEsVariantCallPair().getVariant().getStart();
+      out.packInt(zigZag(start - previousStart));
+      previousStart = start;
+    }
+
+    for (val context : contexts) {
+      val variant = context.getEsVariantCallPair().getVariant();
+      out.packInt(zigZag(variant.getEnd() - variant.getStart()));
+    }
+
+    for (val context : contexts) {
+      writeBases(out, context.getEsVariantCallPair().getVariant().getReferenceBases());
+    }
+
+    for (val context : contexts) {
+      val alternativeBases = context.getEsVariantCallPair().getVariant().getAlternativeBases();
+      out.packInt(alternativeBases.size());
+      for (val bases : alternativeBases) {
+        writeBases(out, bases);
+      }
+    }
+
+    val calls = Lists.<EsConsensusCall>newArrayList();
+    for (val context : contexts) {
+      val variantCalls = context.getEsVariantCallPair().getCalls();
+      out.packInt(variantCalls.size());
+      calls.addAll(variantCalls);
+    }
+
+    for (val call : calls) {
+      out.packInt(call.getCallSetId());
+    }
+
+    writeDictionaryColumn(out, calls, EsConsensusCall::getCallSetName);
+
+    for (val call : calls) {
+      val variantSetIds = call.getVariantSetIds();
+      out.packInt(variantSetIds.size());
+      for (val variantSetId : variantSetIds) {
+        out.packInt(variantSetId);
+      }
+    }
+
+    for (val call : calls) {
+      INFO_SERIALIZER.serialize(out, call.getInfo());
+    }
+  }
+
+  private static <T> void writeDictionaryColumn(DataOutput2 out, List<T> values, Function<T, String> getter)
+      throws IOException {
+    final Map<String, Integer> dictionary = Maps.newLinkedHashMap();
+    val indices = new int[values.size()];
+    for (int i = 0; i < indices.length; i++) {
+      val value = getter.apply(values.get(i));
+      Integer index = dictionary.get(value);
+      if (index == null) {
+        index = dictionary.size();
+        dictionary.put(value, index);
+      }
+      indices[i] = index;
+    }
+    out.packInt(dictionary.size());
+    for (val value : dictionary.keySet()) {
+      Serializer.STRING.serialize(out, value);
+    }
+    for (val index : indices) {
+      out.packInt(index);
+    }
+  }
+
+  public synchronized long getNumVariants() {
+    return numVariants + buffer.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    flushChunk();
+    val footerOffset = position;
+    output.writeInt(chunkOffsets.size());
+    for (int i = 0; i < chunkOffsets.size(); i++) {
+      output.writeLong(chunkOffsets.get(i));
+      output.writeInt(chunkNumVariants.get(i));
+    }
+    output.writeLong(footerOffset);
+    output.writeLong(MAGIC);
+    output.close();
+    deflater.end();
+    closed = true;
+    Files.move(tmpFile, outputFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    log.info("Wrote {} variants in {} chunks to [{}]", numVariants, chunkOffsets.size(), outputFile);
+  }
+
+  /**
+   * Discards everything written so far. The output file is left untouched.
+   */
+  public synchronized void abort() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    output.close();
+    deflater.end();
+    Files.deleteIfExists(tmpFile);
+    log.warn("Aborted writing [{}]", outputFile);
+  }
+
+  public static ColumnarVariantWriter createColumnarVariantWriter(Path outputFile, final int chunkSize) {
+    return new ColumnarVariantWriter(outputFile, chunkSize);
+  }
+
+}
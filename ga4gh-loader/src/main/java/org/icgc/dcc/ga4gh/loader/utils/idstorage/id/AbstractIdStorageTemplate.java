@@ -62,7 +62,7 @@ public abstract class AbstractIdStorageTemplate<K, ID extends Number> implements
    * @return returns the key contained inside
    */
   @Override
-  public void add(final K k) {
+  public synchronized void add(final K k) {
     checkIdUpperBound(); // Assume always increasing ids, and passed checkIdLowerBound in constructor
     if (!containsObject(k)) {
       val i = incr();
@@ -71,7 +71,7 @@ public abstract class AbstractIdStorageTemplate<K, ID extends Number> implements
   }
 
   @Override
-  public boolean containsObject(final K k) {
+  public synchronized boolean containsObject(final K k) {
     return objectCentricCache.containsKey(k);
   }
 
@@ -81,7 +81,7 @@ public abstract class AbstractIdStorageTemplate<K, ID extends Number> implements
   }
 
   @Override
-  public ID getId(@NonNull K k) {
+  public synchronized ID getId(@NonNull K k) {
     checkArgument(objectCentricCache.containsKey(k), "The following key doesnt not exist in the idstorage: \n%s", k);
     return objectCentricCache.get(k);
   }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantIdGenerator;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Derives a 63 bit id from the murmur3_128 hash of (referenceName, start, end, referenceBases, alternativeBases),
+ * so the same variant keeps the same id in every load. The ids generated so far are kept in a disk backed MapDB
+ * set. An id that was already generated is a collision: the variant is rehashed with the next seed until its id
+ * is unique. Collisions are logged; ids of colliding variants are only stable across loads when the variants are
+ * streamed in the same order, for example with the genomic order aggregator.
+ */
+@Slf4j
+public class ContentHashVariantIdGenerator implements VariantIdGenerator {
+
+  private static final int MAX_NUM_SALTS = 16;
+  private static final String IDS_SET_NAME = "generatedVariantIds";
+
+  private final HashFunction[] hashFunctions;
+  private final DB db;
+  private final Set<Long> generatedIds;
+  private long numCollisions = 0;
+
+  private ContentHashVariantIdGenerator(int seed) {
+    this.hashFunctions = new HashFunction[MAX_NUM_SALTS];
+    for (int i = 0; i < MAX_NUM_SALTS; i++) {
+      hashFunctions[i] = Hashing.murmur3_128(seed + i);
+    }
+    this.db = DBMaker.tempFileDB()
+        .fileMmapEnableIfSupported()
+        .concurrencyDisable()
+        .closeOnJvmShutdown()
+        .make();
+    this.generatedIds = db.hashSet(IDS_SET_NAME, Serializer.LONG).create();
+  }
+
+  @Override
+  public long generateId(@NonNull EsVariant esVariant) {
+    for (int salt = 0; salt < MAX_NUM_SALTS; salt++) {
+      val id = hash(hashFunctions[salt], esVariant);
+      if (generatedIds.add(id)) {
+        return id;
+      }
+      numCollisions++;
+      log.warn("The id {} of the variant [{}] collides with an earlier variant, rehashing with salt {}", id,
+          esVariant, salt + 1);
+    }
+    throw new IllegalStateException(
+        String.format("Could not generate a unique id for the variant [%s] with %s salts", esVariant, MAX_NUM_SALTS));
+  }
+
+  /**
+   * Fields are length prefixed, so that distinct variants never produce the same hash input
+   */
+  static long hash(HashFunction hashFunction, EsVariant esVariant) {
+    val hasher = hashFunction.newHasher();
+    putString(hasher, esVariant.getReferenceName());
+    hasher.putInt(esVariant.getStart());
+    hasher.putInt(esVariant.getEnd());
+    putString(hasher, esVariant.getReferenceBases());
+    hasher.putInt(esVariant.getAlternativeBases().size());
+    for (val alternativeBases : esVariant.getAlternativeBases()) {
+      putString(hasher, alternativeBases);
+    }
+    return hasher.hash().asLong() & Long.MAX_VALUE;
+  }
+
+  private static void putString(Hasher hasher, String value) {
+    val bytes = value.getBytes(UTF_8);
+    hasher.putInt(bytes.length);
+    hasher.putBytes(bytes);
+  }
+
+  public long getNumCollisions() {
+    return numCollisions;
+  }
+
+  @Override
+  public void close() {
+    log.info("Generated {} content hash variant ids with {} collisions", generatedIds.size(), numCollisions);
+    db.close();
+  }
+
+  public static ContentHashVariantIdGenerator createContentHashVariantIdGenerator(int seed) {
+    return new ContentHashVariantIdGenerator(seed);
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantIdGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkState;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext.createVariantIdContext;
+
+/**
+ * Decorates a VariantAggregator so that the ids of the streamed variants come from a VariantIdGenerator instead of
+ * the delegate's running count. Each stream gets a fresh generator, which is closed with the stream.
+ */
+@RequiredArgsConstructor(access = PRIVATE)
+public class IdGeneratingVariantAggregator implements VariantAggregator, Checkpointable {
+
+  @NonNull private final VariantAggregator variantAggregator;
+  @NonNull private final Supplier<VariantIdGenerator> variantIdGeneratorSupplier;
+
+  @Override
+  public void add(EsVariant esVariant, EsConsensusCall esCall) {
+    variantAggregator.add(esVariant, esCall);
+  }
+
+  @Override
+  public Stream<VariantIdContext<Long>> streamVariantIdContext() {
+    val variantIdGenerator = variantIdGeneratorSupplier.get();
+    val stream = variantAggregator.streamVariantIdContext();
+    return stream
+        .sequential()
+        .map(x -> createVariantIdContext(variantIdGenerator.generateId(x.getEsVariantCallPair().getVariant()),
+            x.getEsVariantCallPair()))
+        .onClose(variantIdGenerator::close);
+  }
+
+  @Override
+  public void checkpoint(Path dir) throws IOException {
+    asCheckpointable().checkpoint(dir);
+  }
+
+  @Override
+  public void restore(Path dir) throws IOException {
+    asCheckpointable().restore(dir);
+  }
+
+  @Override
+  public boolean isCheckpointable() {
+    return variantAggregator instanceof Checkpointable && ((Checkpointable) variantAggregator).isCheckpointable();
+  }
+
+  private Checkpointable asCheckpointable() {
+    checkState(isCheckpointable(), "The VariantAggregator [%s] is not checkpointable",
+        variantAggregator.getClass().getSimpleName());
+    return (Checkpointable) variantAggregator;
+  }
+
+  @Override
+  public void purge() {
+    variantAggregator.purge();
+  }
+
+  @Override
+  public void close() throws IOException {
+    variantAggregator.close();
+  }
+
+  public static IdGeneratingVariantAggregator createIdGeneratingVariantAggregator(VariantAggregator variantAggregator,
+      Supplier<VariantIdGenerator> variantIdGeneratorSupplier) {
+    return new IdGeneratingVariantAggregator(variantAggregator, variantIdGeneratorSupplier);
+  }
+
+}
@@ -18,22 +18,53 @@
 
 package org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl;
 
+import com.google.common.collect.Lists;
 import lombok.NoArgsConstructor;
 import lombok.val;
 import org.icgc.dcc.ga4gh.common.model.es.EsCallSet;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariantSet;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.AbstractIdStorageTemplate;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantIdGenerator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorage;
+import org.icgc.dcc.ga4gh.loader.utils.sort.ExternalSorter;
+
+import java.util.List;
 
 import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.loader.AggregatorModes.APPEND_ONLY;
+import static org.icgc.dcc.ga4gh.loader.AggregatorModes.SORT_MERGE;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_AGGREGATOR_BUCKET_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_AGGREGATOR_GENOMIC_ORDER;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_AGGREGATOR_MODE;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_AGGREGATOR_SORT_BUFFER_SIZE;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_AGGREGATOR_NUM_SHARDS;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_ID_HASH_SEED;
+import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_ID_MODE;
 import static org.icgc.dcc.ga4gh.loader.Config.VARIANT_MAPDB_ALLOCATION;
+import static org.icgc.dcc.ga4gh.loader.VariantIdModes.CONTENT_HASH;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CONSENSUS_CALL_LIST_SERIALIZER;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CALL_SET_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CONSENSUS_CALL_SERIALIZER;
+import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_CALL_PAIR_SERIALIZER;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SERIALIZER;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SET_SERIALIZER;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.RESOURCE_PERSISTED_PATH;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.ContentHashVariantIdGenerator.createContentHashVariantIdGenerator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.GenomicOrderVariantAggregator.createGenomicOrderVariantAggregator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.IdGeneratingVariantAggregator.createIdGeneratingVariantAggregator;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.IntegerIdStorage.createIntegerIdStorage;
-import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantAggregator.createVariantAggregator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.MapVariantAggregator.createShardedMapVariantAggregator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.MapVariantAggregator.createMapVariantAggregator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.SequentialVariantIdGenerator.createSequentialVariantIdGenerator;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.SortMergeVariantAggregator.VARIANT_CALL_PAIR_COMPARATOR;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.SortMergeVariantAggregator.createSortMergeVariantAggregator;
 import static org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorageFactory.createMapStorageFactory;
+import static org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.LogStructuredMapStorage.createLogStructuredMapStorage;
+import static org.icgc.dcc.ga4gh.loader.utils.sort.ExternalSorter.createExternalSorter;
 import static org.mapdb.Serializer.INTEGER;
 
 @NoArgsConstructor(access = PRIVATE)
@@ -57,11 +88,53 @@ public class IdStorageFactory2 {
   }
 
   public static VariantAggregator  buildVariantAggregator(){
-    val mapStorageFactory = createMapStorageFactory("variantLongMapStorage",
+    return createIdGeneratingVariantAggregator(buildOrderedVariantAggregator(), IdStorageFactory2::buildVariantIdGenerator);
+  }
+
+  public static VariantIdGenerator buildVariantIdGenerator(){
+    if (VARIANT_ID_MODE == CONTENT_HASH){
+      return createContentHashVariantIdGenerator(VARIANT_ID_HASH_SEED);
+    }
+    return createSequentialVariantIdGenerator();
+  }
+
+  private static VariantAggregator buildOrderedVariantAggregator(){
+    val variantAggregator = buildUnorderedVariantAggregator();
+    if (VARIANT_AGGREGATOR_GENOMIC_ORDER){
+      return createGenomicOrderVariantAggregator(variantAggregator, buildVariantCallPairSorter("genomicOrderSorter"));
+    }
+    return variantAggregator;
+  }
+
+  private static ExternalSorter<EsVariantCallPair> buildVariantCallPairSorter(String name){
+    return createExternalSorter(name, ES_VARIANT_CALL_PAIR_SERIALIZER,
+        VARIANT_CALL_PAIR_COMPARATOR, RESOURCE_PERSISTED_PATH, VARIANT_AGGREGATOR_SORT_BUFFER_SIZE);
+  }
+
+  private static VariantAggregator buildUnorderedVariantAggregator(){
+    if (VARIANT_AGGREGATOR_MODE == SORT_MERGE){
+      return createSortMergeVariantAggregator(buildVariantCallPairSorter("variantCallPairSorter"));
+    }
+    if (VARIANT_AGGREGATOR_NUM_SHARDS == 1){
+      return createMapVariantAggregator(buildVariantMapStorage("variantLongMapStorage", VARIANT_MAPDB_ALLOCATION));
+    }
+    val shardAllocation = VARIANT_MAPDB_ALLOCATION / VARIANT_AGGREGATOR_NUM_SHARDS;
+    val mapStorages = Lists.<MapStorage<EsVariant, List<EsConsensusCall>>>newArrayList();
+    for (int i = 0; i < VARIANT_AGGREGATOR_NUM_SHARDS; i++){
+      mapStorages.add(buildVariantMapStorage("variantLongMapStorage-"+i, shardAllocation));
+    }
+    return createShardedMapVariantAggregator(mapStorages, VARIANT_AGGREGATOR_BUCKET_SIZE);
+  }
+
+  private static MapStorage<EsVariant, List<EsConsensusCall>> buildVariantMapStorage(String name, final long allocation){
+    if (VARIANT_AGGREGATOR_MODE == APPEND_ONLY){
+      return createLogStructuredMapStorage(name, ES_VARIANT_SERIALIZER, ES_CONSENSUS_CALL_SERIALIZER,
+          RESOURCE_PERSISTED_PATH);
+    }
+    val mapStorageFactory = createMapStorageFactory(name,
         ES_VARIANT_SERIALIZER, ES_CONSENSUS_CALL_LIST_SERIALIZER,
-        RESOURCE_PERSISTED_PATH, VARIANT_MAPDB_ALLOCATION);
-    val mapStorage = mapStorageFactory.createDirectMemoryMapStorage(true);
-    return createVariantAggregator(mapStorage);
+        RESOURCE_PERSISTED_PATH, allocation);
+    return mapStorageFactory.createDirectMemoryMapStorage(true);
   }
 
 }
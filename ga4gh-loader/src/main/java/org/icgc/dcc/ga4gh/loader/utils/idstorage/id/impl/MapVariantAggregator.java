@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.AppendableMapStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.MapStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.copyOf;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.stream.Collectors.toList;
+import static org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair.createEsVariantCallPair;
+
+/**
+ * Aggregates calls by variant. The variants are partitioned into shards by referenceName and start position
+ * bucket, and every shard is backed by its own MapStorage and guarded by its own lock, so that concurrent
+ * VcfProcessors only contend when they add variants that fall in the same shard. Shards backed by an
+ * AppendableMapStorage append each call instead of rewriting the whole call list.
+ */
+@Slf4j
+public class MapVariantAggregator implements VariantAggregator, Checkpointable {
+
+  private static final long DEFAULT_BUCKET_SIZE = Long.MAX_VALUE;
+
+  @NonNull private final List<MapStorage<EsVariant, List<EsConsensusCall>>> mapStorages;
+  private final List<Map<EsVariant, List<EsConsensusCall>>> maps;
+  private final Object[] locks;
+  private final AppendableMapStorage<EsVariant, EsConsensusCall>[] appendableMapStorages;
+  private final long bucketSize;
+  private long count = 0;
+
+  public MapVariantAggregator(List<MapStorage<EsVariant, List<EsConsensusCall>>> mapStorages, final long bucketSize) {
+    checkArgument(!mapStorages.isEmpty(), "There must be at least one MapStorage");
+    checkArgument(bucketSize > 0, "The bucketSize [%s] must be greater than 0", bucketSize);
+    this.mapStorages = copyOf(mapStorages);
+    this.maps = this.mapStorages.stream().map(MapStorage::getMap).collect(toList());
+    this.bucketSize = bucketSize;
+    this.locks = new Object[mapStorages.size()];
+    this.appendableMapStorages = new AppendableMapStorage[mapStorages.size()];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+      appendableMapStorages[i] = toAppendable(this.mapStorages.get(i));
+    }
+  }
+
+  private VariantIdContext<Long> procEntry(Map.Entry<EsVariant, List<EsConsensusCall>> entry){
+    val esVariantCallPair = createEsVariantCallPair(entry.getKey(), entry.getValue());
+    return VariantIdContext.<Long>createVariantIdContext(incrCount(),esVariantCallPair);
+  }
+
+  private void resetCount(){
+    this.count = 0;
+  }
+
+  private long incrCount(){
+    return count++;
+  }
+
+  public int getNumShards(){
+    return maps.size();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AppendableMapStorage<EsVariant, EsConsensusCall> toAppendable(
+      MapStorage<EsVariant, List<EsConsensusCall>> mapStorage){
+    if (mapStorage instanceof AppendableMapStorage){
+      return (AppendableMapStorage<EsVariant, EsConsensusCall>) mapStorage;
+    }
+    return null;
+  }
+
+  int getShard(EsVariant esVariant){
+    val hash = 31 * esVariant.getReferenceName().hashCode() + Long.hashCode(esVariant.getStart() / bucketSize);
+    return Math.floorMod(hash, maps.size());
+  }
+
+  /**
+   * Only aggregators whose shards are all checkpointable, for example the LogStructuredMapStorage, can be
+   * checkpointed. All shards are locked while the checkpoint is taken.
+   */
+  @Override
+  public boolean isCheckpointable() {
+    return mapStorages.stream().allMatch(x -> x instanceof Checkpointable);
+  }
+
+  @Override
+  public void checkpoint(Path dir) throws IOException {
+    checkState(isCheckpointable(), "Not all MapStorages of the [%s] are checkpointable", getClass().getSimpleName());
+    for (int i = 0; i < mapStorages.size(); i++) {
+      synchronized (locks[i]) {
+        ((Checkpointable) mapStorages.get(i)).checkpoint(dir);
+      }
+    }
+  }
+
+  @Override
+  public void restore(Path dir) throws IOException {
+    checkState(isCheckpointable(), "Not all MapStorages of the [%s] are checkpointable", getClass().getSimpleName());
+    for (int i = 0; i < mapStorages.size(); i++) {
+      synchronized (locks[i]) {
+        ((Checkpointable) mapStorages.get(i)).restore(dir);
+      }
+    }
+  }
+
+  @Override public void purge() {
+    mapStorages.forEach(MapStorage::purge);
+  }
+
+  @Override
+  public void add(EsVariant esVariant, EsConsensusCall esCall) {
+    val shard = getShard(esVariant);
+    val map = maps.get(shard);
+    synchronized (locks[shard]) {
+      if (appendableMapStorages[shard] != null){
+        appendableMapStorages[shard].append(esVariant, esCall);
+        return;
+      }
+      val callList = map.get(esVariant);
+      if (callList == null){
+        map.put(esVariant, newArrayList(esCall));
+      } else {
+        callList.add(esCall);
+        map.put(esVariant, callList); //rtisma refer to JIRA ticket [https://jira.oicr.on.ca/browse/DCC-5587] -- [GA4GH] DiskMapStorage disk commit issue
+      }
+    }
+  }
+
+  /**
+   * Streams the shards one after the other. Ids are assigned sequentially in stream order, so they are stable
+   * for a given aggregation.
+   */
+  @Override
+  public Stream<VariantIdContext<Long>> streamVariantIdContext() {
+    resetCount();
+    return maps.stream()
+        .flatMap(x -> x.entrySet().stream())
+        .map(this::procEntry);
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (val mapStorage : mapStorages){
+      try {
+        mapStorage.close();
+      } catch (Throwable t){
+        log.error("Could not close MapStorage [{}]", this.getClass().getName());
+      }
+    }
+  }
+
+  public static MapVariantAggregator createMapVariantAggregator(MapStorage<EsVariant, List<EsConsensusCall>> mapStorage) {
+    return new MapVariantAggregator(newArrayList(mapStorage), DEFAULT_BUCKET_SIZE);
+  }
+
+  public static MapVariantAggregator createShardedMapVariantAggregator(
+      List<MapStorage<EsVariant, List<EsConsensusCall>>> mapStorages, final long bucketSize) {
+    return new MapVariantAggregator(mapStorages, bucketSize);
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.sort.ExternalSorter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.stream.StreamSupport.stream;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair.createEsVariantCallPair;
+
+/**
+ * Aggregates calls by variant without random access. Every (variant, call) is spilled to sorted runs keyed by
+ * (referenceName, start, end, referenceBases, alternativeBases), and the runs are k-way merged when streaming.
+ * Equal variants are therefore adjacent and are grouped into a single EsVariantCallPair on the fly.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = PRIVATE)
+public class SortMergeVariantAggregator implements VariantAggregator, Checkpointable {
+
+  public static final Comparator<EsVariant> VARIANT_COMPARATOR = Comparator
+      .comparing(EsVariant::getReferenceName)
+      .thenComparingInt(EsVariant::getStart)
+      .thenComparingInt(EsVariant::getEnd)
+      .thenComparing(EsVariant::getReferenceBases)
+      .thenComparing(x -> String.join(",", x.getAlternativeBases()));
+
+  public static final Comparator<EsVariantCallPair> VARIANT_CALL_PAIR_COMPARATOR =
+      Comparator.comparing(EsVariantCallPair::getVariant, VARIANT_COMPARATOR);
+
+  @NonNull private final ExternalSorter<EsVariantCallPair> sorter;
+
+  @Override
+  public void add(EsVariant esVariant, EsConsensusCall esCall) {
+    sorter.add(createEsVariantCallPair(esVariant, newArrayList(esCall)));
+  }
+
+  @Override
+  public void add(EsVariant esVariant, List<EsConsensusCall> esCalls) {
+    sorter.add(createEsVariantCallPair(esVariant, newArrayList(esCalls)));
+  }
+
+  @Override
+  public Stream<VariantIdContext<Long>> streamVariantIdContext() {
+    val sorted = sorter.streamSorted();
+    val grouped = new GroupingIterator(Iterators.peekingIterator(sorted.iterator()));
+    return stream(spliteratorUnknownSize(grouped, ORDERED), false)
+        .onClose(sorted::close);
+  }
+
+  @Override
+  public void checkpoint(Path dir) throws IOException {
+    sorter.checkpoint(dir);
+  }
+
+  @Override
+  public void restore(Path dir) throws IOException {
+    sorter.restore(dir);
+  }
+
+  @Override
+  public void purge() {
+    sorter.purge();
+  }
+
+  @Override
+  public void close() throws IOException {
+    sorter.close();
+  }
+
+  public static SortMergeVariantAggregator createSortMergeVariantAggregator(ExternalSorter<EsVariantCallPair> sorter) {
+    return new SortMergeVariantAggregator(sorter);
+  }
+
+  @RequiredArgsConstructor
+  private static class GroupingIterator implements Iterator<VariantIdContext<Long>> {
+
+    @NonNull private final PeekingIterator<EsVariantCallPair> sorted;
+    private long count = 0;
+
+    @Override public boolean hasNext() {
+      return sorted.hasNext();
+    }
+
+    @Override public VariantIdContext<Long> next() {
+      val first = sorted.next();
+      val variant = first.getVariant();
+      val calls = newArrayList(first.getCalls());
+      while (sorted.hasNext() && sorted.peek().getVariant().equals(variant)) {
+        calls.addAll(sorted.next().getCalls());
+      }
+      return VariantIdContext.<Long>createVariantIdContext(count++, createEsVariantCallPair(variant, calls));
+    }
+
+  }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.AppendableMapStorage;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.reverse;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only storage of lists. Every appended element is written as a record to a log file, and every record
+ * points to the previous record of the same key:
+ * <pre>
+ *   [long previousOffset][int length][byte[length] element]
+ * </pre>
+ * Only the offset of the latest record of every key is kept in an off-heap MapDB map, so an append is O(1)
+ * and never touches the existing records. Chains are resolved, in insertion order, when the map view is read.
+ */
+@Slf4j
+public class LogStructuredMapStorage<K, E> implements AppendableMapStorage<K, E>, Checkpointable {
+
+  private static final long NO_PREVIOUS = -1L;
+  private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+  private static final String LOG_EXTENSION = ".log";
+  private static final String HEADS_EXTENSION = ".heads";
+
+  // Input dep
+  private final String name;
+  private final Path outputDir;
+  private final Serializer<K> keySerializer;
+  private final Serializer<E> elementSerializer;
+
+  // Internal Deps
+  private DB db;
+  private Map<K, Long> headIndex;
+  private DataOutputStream logOutput;
+  private FileChannel logReader;
+  private long position;
+  private boolean dirty;
+  private long checkpointedPosition;
+  private final Map<K, List<E>> view = new LogView();
+
+  private LogStructuredMapStorage(@NonNull final String name,
+      @NonNull final Serializer<K> keySerializer,
+      @NonNull final Serializer<E> elementSerializer,
+      @NonNull final Path outputDir) {
+    this.name = name;
+    this.outputDir = outputDir;
+    this.keySerializer = keySerializer;
+    this.elementSerializer = elementSerializer;
+    init();
+  }
+
+  @SneakyThrows
+  private void init() {
+    log.info("Initializing LogStructuredMapStorage [{}] ", this.name);
+    val filepath = generateFilepath(name, outputDir);
+    Files.createDirectories(outputDir);
+    Files.deleteIfExists(filepath);
+    this.logOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath.toFile()),
+        WRITE_BUFFER_SIZE));
+    this.logReader = FileChannel.open(filepath, READ);
+    this.position = 0;
+    this.dirty = false;
+    this.checkpointedPosition = 0;
+    this.db = DBMaker
+        .memoryDirectDB()
+        .closeOnJvmShutdown()
+        .concurrencyDisable()
+        .make();
+    this.headIndex = db.hashMap(name, keySerializer, Serializer.LONG).createOrOpen();
+  }
+
+  @Override
+  @SneakyThrows
+  public synchronized void append(@NonNull K key, @NonNull E element) {
+    val previous = headIndex.get(key);
+    headIndex.put(key, writeRecord(previous == null ? NO_PREVIOUS : previous, element));
+  }
+
+  private long writeRecord(final long previousOffset, E element) throws IOException {
+    val out = new DataOutput2();
+    elementSerializer.serialize(out, element);
+    val offset = position;
+    logOutput.writeLong(previousOffset);
+    logOutput.writeInt(out.pos);
+    logOutput.write(out.buf, 0, out.pos);
+    position += RECORD_HEADER_SIZE + out.pos;
+    dirty = true;
+    return offset;
+  }
+
+  @SneakyThrows
+  private synchronized List<E> resolve(final long headOffset) {
+    if (dirty) {
+      logOutput.flush();
+      dirty = false;
+    }
+    final List<E> elements = newArrayList();
+    val header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    long offset = headOffset;
+    while (offset != NO_PREVIOUS) {
+      header.clear();
+      readFully(header, offset);
+      header.flip();
+      val previousOffset = header.getLong();
+      val length = header.getInt();
+      val bytes = ByteBuffer.allocate(length);
+      readFully(bytes, offset + RECORD_HEADER_SIZE);
+      elements.add(elementSerializer.deserialize(new DataInput2.ByteArray(bytes.array()), length));
+      offset = previousOffset;
+    }
+    return reverse(elements);
+  }
+
+  private void readFully(ByteBuffer buffer, final long offset) throws IOException {
+    long pos = offset;
+    while (buffer.hasRemaining()) {
+      val numRead = logReader.read(buffer, pos);
+      if (numRead < 0) {
+        throw new IOException(String.format("Unexpected end of log [%s] at offset [%s]", name, pos));
+      }
+      pos += numRead;
+    }
+  }
+
+  /**
+   * The log is append-only, so only the records written since the previous checkpoint are appended to a copy of
+   * the log shared by all checkpoints, in the parent of the checkpoint directory. The head index and the length of
+   * the log are stored in the checkpoint directory itself.
+   */
+  @Override
+  public synchronized void checkpoint(@NonNull Path dir) throws IOException {
+    logOutput.flush();
+    dirty = false;
+    val sharedLog = generateFilepath(name, dir.toAbsolutePath().getParent());
+    try (val target = FileChannel.open(sharedLog, CREATE, WRITE)) {
+      // Drop records of an uncommitted checkpoint
+      target.truncate(checkpointedPosition);
+      long transferred = 0;
+      val length = position - checkpointedPosition;
+      while (transferred < length) {
+        transferred += logReader.transferTo(checkpointedPosition + transferred, length - transferred,
+            target.position(checkpointedPosition + transferred));
+      }
+      target.force(false);
+    }
+
+    val keyOutput = new DataOutput2();
+    try (val out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(dir.resolve(name + HEADS_EXTENSION).toFile()), WRITE_BUFFER_SIZE))) {
+      out.writeLong(position);
+      out.writeInt(headIndex.size());
+      for (val entry : headIndex.entrySet()) {
+        keyOutput.pos = 0;
+        keySerializer.serialize(keyOutput, entry.getKey());
+        out.writeInt(keyOutput.pos);
+        out.write(keyOutput.buf, 0, keyOutput.pos);
+        out.writeLong(entry.getValue());
+      }
+    }
+    checkpointedPosition = position;
+  }
+
+  @Override
+  public synchronized void restore(@NonNull Path dir) throws IOException {
+    val headsFile = dir.resolve(name + HEADS_EXTENSION);
+    checkState(Files.isRegularFile(headsFile), "The checkpoint file [%s] DNE", headsFile);
+    try (val in = new DataInputStream(new BufferedInputStream(new FileInputStream(headsFile.toFile())))) {
+      val restoredPosition = in.readLong();
+      val sharedLog = generateFilepath(name, dir.toAbsolutePath().getParent());
+      checkState(Files.size(sharedLog) >= restoredPosition, "The checkpoint log [%s] is truncated", sharedLog);
+
+      close();
+      init();
+      logOutput.close();
+      val filepath = generateFilepath(name, outputDir);
+      try (val source = FileChannel.open(sharedLog, READ);
+          val target = FileChannel.open(filepath, WRITE, TRUNCATE_EXISTING)) {
+        long transferred = 0;
+        while (transferred < restoredPosition) {
+          transferred += source.transferTo(transferred, restoredPosition - transferred, target);
+        }
+      }
+      this.logOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath.toFile(), true),
+          WRITE_BUFFER_SIZE));
+
+      val numKeys = in.readInt();
+      for (int i = 0; i < numKeys; i++) {
+        val bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        headIndex.put(keySerializer.deserialize(new DataInput2.ByteArray(bytes), bytes.length), in.readLong());
+      }
+      this.position = restoredPosition;
+      this.checkpointedPosition = restoredPosition;
+    }
+    log.info("Restored LogStructuredMapStorage [{}] with {} keys from [{}]", name, headIndex.size(), dir);
+  }
+
+  /**
+   * Returns a view over the log. Reading resolves the chains lazily; put replaces the list of a key by starting
+   * a new chain.
+   */
+  @Override
+  public Map<K, List<E>> getMap() {
+    return view;
+  }
+
+  @Override
+  public void close() throws IOException {
+    logOutput.close();
+    logReader.close();
+    db.close();
+    Files.deleteIfExists(generateFilepath(name, outputDir));
+    log.info("Closed [{}] LogStructuredMapStorage", this.name);
+  }
+
+  @Override
+  public void purge() {
+    try {
+      close();
+      init();
+    } catch (IOException e) {
+      log.error("Was not able to purge LogStructuredMapStorage: name: {}", name);
+    }
+  }
+
+  public static Path generateFilepath(String name, Path outputDir) {
+    return outputDir.resolve(name + LOG_EXTENSION);
+  }
+
+  public static <K, E> LogStructuredMapStorage<K, E> createLogStructuredMapStorage(final String name,
+      final Serializer<K> keySerializer, final Serializer<E> elementSerializer, final Path outputDir) {
+    return new LogStructuredMapStorage<K, E>(name, keySerializer, elementSerializer, outputDir);
+  }
+
+  private class LogView extends AbstractMap<K, List<E>> {
+
+    @Override public int size() {
+      return headIndex.size();
+    }
+
+    @Override public boolean containsKey(Object key) {
+      return headIndex.containsKey(key);
+    }
+
+    @Override public List<E> get(Object key) {
+      val head = headIndex.get(key);
+      return head == null ? null : resolve(head);
+    }
+
+    @Override
+    @SneakyThrows
+    public List<E> put(K key, List<E> elements) {
+      synchronized (LogStructuredMapStorage.this) {
+        val old = get(key);
+        long head = NO_PREVIOUS;
+        for (val element : elements) {
+          head = writeRecord(head, element);
+        }
+        headIndex.put(key, head);
+        return old;
+      }
+    }
+
+    @Override public Set<Entry<K, List<E>>> entrySet() {
+      return new AbstractSet<Entry<K, List<E>>>() {
+
+        @Override public Iterator<Entry<K, List<E>>> iterator() {
+          val it = headIndex.entrySet().iterator();
+          return new Iterator<Entry<K, List<E>>>() {
+
+            @Override public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override public Entry<K, List<E>> next() {
+              val entry = it.next();
+              return new SimpleImmutableEntry<>(entry.getKey(), resolve(entry.getValue()));
+            }
+
+          };
+        }
+
+        @Override public int size() {
+          return headIndex.size();
+        }
+
+      };
+    }
+
+  }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.loader.utils.sort;
+
+import com.google.common.collect.Lists;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.icgc.dcc.ga4gh.loader.utils.Checkpointable;
+import org.icgc.dcc.ga4gh.loader.utils.Purgeable;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.stream.StreamSupport.stream;
+
+/**
+ * Sorts more objects than fit in memory. Objects are buffered until maxBufferSize is reached, then the buffer is
+ * swapped out and sorted and spilled to a run file by the adding thread, outside of the lock, so other threads can
+ * keep adding while it writes. Streaming k-way merges the run files, so all disk I/O is sequential. At most
+ * maxFanIn runs are opened at once: when there are more, adjacent runs are first merged into larger runs in
+ * additional passes. Objects that compare equal are streamed in insertion order.
+ */
+@Slf4j
+public class ExternalSorter<T> implements Closeable, Purgeable, Checkpointable {
+
+  private static final int IO_BUFFER_SIZE = 1 << 16;
+  private static final String RUN_FILE_PREFIX = "run.";
+  private static final String CHECKPOINT_RUNS_FILENAME = "runs.txt";
+  private static final int DEFAULT_MAX_FAN_IN = 64;
+
+  @NonNull private final String name;
+  @NonNull private final Serializer<T> serializer;
+  @NonNull private final Comparator<T> comparator;
+  @NonNull private final Path outputDir;
+  private final int maxBufferSize;
+  private final int maxFanIn;
+
+  /**
+   * State
+   */
+  private List<T> buffer;
+  private final List<Path> runFiles = newArrayList(); // Slots of runs still being spilled are null
+  private int numPendingSpills = 0;
+
+  private ExternalSorter(String name, Serializer<T> serializer, Comparator<T> comparator, Path outputDir,
+      final int maxBufferSize, final int maxFanIn) {
+    checkArgument(maxBufferSize > 0, "The maxBufferSize [%s] must be greater than 0", maxBufferSize);
+    checkArgument(maxFanIn > 1, "The maxFanIn [%s] must be greater than 1", maxFanIn);
+    this.name = name;
+    this.serializer = serializer;
+    this.comparator = comparator;
+    this.outputDir = outputDir;
+    this.maxBufferSize = maxBufferSize;
+    this.maxFanIn = maxFanIn;
+    this.buffer = newArrayList();
+  }
+
+  public void add(@NonNull T object) {
+    List<T> fullBuffer = null;
+    int runIndex = -1;
+    synchronized (this) {
+      buffer.add(object);
+      if (buffer.size() >= maxBufferSize) {
+        fullBuffer = buffer;
+        buffer = newArrayList();
+        runIndex = reserveRun();
+      }
+    }
+    if (fullBuffer != null) {
+      spill(fullBuffer, runIndex);
+    }
+  }
+
+  public synchronized long getNumRuns() {
+    return runFiles.size();
+  }
+
+  /*
+   * The run slot is reserved while holding the lock, so runs keep the order in which their objects were added
+   * even when they finish spilling out of order. That is what keeps the merge stable.
+   */
+  private int reserveRun() {
+    runFiles.add(null);
+    numPendingSpills++;
+    return runFiles.size() - 1;
+  }
+
+  private void spill(List<T> objects, final int runIndex) {
+    Path runFile = null;
+    try {
+      objects.sort(comparator); // List.sort is stable
+      runFile = writeRun(objects.iterator());
+      log.info("Spilled {} objects to run [{}] for [{}]", objects.size(), runFile.getFileName(), name);
+    } finally {
+      completeSpill(runIndex, runFile);
+    }
+  }
+
+  private synchronized void completeSpill(final int runIndex, Path runFile) {
+    runFiles.set(runIndex, runFile);
+    numPendingSpills--;
+    notifyAll();
+  }
+
+  /*
+   * Must be called while holding the lock. Spills the current buffer and waits for the spills of other threads,
+   * so that every run slot is filled.
+   */
+  @SneakyThrows
+  private void spillAll() {
+    if (!buffer.isEmpty()) {
+      val objects = buffer;
+      buffer = newArrayList();
+      spill(objects, reserveRun());
+    }
+    while (numPendingSpills > 0) {
+      wait();
+    }
+    checkState(!runFiles.contains(null), "A run of the sorter [%s] failed to spill", name);
+  }
+
+  @SneakyThrows
+  private Path writeRun(Iterator<T> objects) {
+    Files.createDirectories(outputDir);
+    val runFile = Files.createTempFile(outputDir, name + "." + RUN_FILE_PREFIX, ".bin");
+    val dataOutput2 = new DataOutput2();
+    try (val out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile), IO_BUFFER_SIZE))) {
+      while (objects.hasNext()) {
+        dataOutput2.pos = 0;
+        serializer.serialize(dataOutput2, objects.next());
+        out.writeInt(dataOutput2.pos);
+        out.write(dataOutput2.buf, 0, dataOutput2.pos);
+      }
+    }
+    return runFile;
+  }
+
+  /**
+   * Streams every object added so far in sorted order. If nothing was spilled, the buffer is sorted in memory.
+   * The stream must be closed to release the run file handles.
+   */
+  public synchronized Stream<T> streamSorted() {
+    if (runFiles.isEmpty()) {
+      buffer.sort(comparator);
+      return buffer.stream();
+    }
+    spillAll();
+    while (runFiles.size() > maxFanIn) {
+      mergePass();
+    }
+    val readers = openRuns(runFiles);
+    val iterator = new MergeIterator(readers);
+    return stream(spliteratorUnknownSize(iterator, ORDERED), false)
+        .onClose(() -> readers.forEach(RunReader::close));
+  }
+
+  /*
+   * Merges each group of maxFanIn adjacent runs into a single run. Only adjacent runs are merged, so the order
+   * of the runs, and therefore the stability of the final merge, is preserved.
+   */
+  @SneakyThrows
+  private void mergePass() {
+    val mergedRunFiles = Lists.<Path>newArrayList();
+    for (val group : Lists.partition(runFiles, maxFanIn)) {
+      if (group.size() == 1) {
+        mergedRunFiles.add(group.get(0));
+        continue;
+      }
+      val readers = openRuns(group);
+      try {
+        mergedRunFiles.add(writeRun(new MergeIterator(readers)));
+      } finally {
+        readers.forEach(RunReader::close);
+      }
+      for (val runFile : group) {
+        Files.delete(runFile);
+      }
+    }
+    log.info("Merged {} runs into {} runs for [{}]", runFiles.size(), mergedRunFiles.size(), name);
+    runFiles.clear();
+    runFiles.addAll(mergedRunFiles);
+  }
+
+  private List<RunReader> openRuns(List<Path> runs) {
+    val readers = Lists.<RunReader>newArrayList();
+    try {
+      for (int i = 0; i < runs.size(); i++) {
+        readers.add(new RunReader(i, runs.get(i)));
+      }
+    } catch (Throwable e) {
+      readers.forEach(RunReader::close);
+      throw e;
+    }
+    return readers;
+  }
+
+  /**
+   * Spills the buffer and links the run files into the checkpoint directory. Run files are immutable, so linking
+   * them is enough.
+   */
+  @Override
+  public synchronized void checkpoint(@NonNull Path dir) throws IOException {
+    spillAll();
+    val lines = Lists.<String>newArrayList();
+    for (val runFile : runFiles) {
+      val target = dir.resolve(name + "." + runFile.getFileName());
+      linkOrCopy(runFile, target);
+      lines.add(target.getFileName().toString());
+    }
+    Files.write(dir.resolve(name + "." + CHECKPOINT_RUNS_FILENAME), lines);
+  }
+
+  @Override
+  public synchronized void restore(@NonNull Path dir) throws IOException {
+    purge();
+    Files.createDirectories(outputDir);
+    for (val line : Files.readAllLines(dir.resolve(name + "." + CHECKPOINT_RUNS_FILENAME))) {
+      val runFile = Files.createTempFile(outputDir, name + "." + RUN_FILE_PREFIX, ".bin");
+      Files.delete(runFile);
+      linkOrCopy(dir.resolve(line), runFile);
+      runFiles.add(runFile);
+    }
+    log.info("Restored {} runs for [{}] from [{}]", runFiles.size(), name, dir);
+  }
+
+  private static void linkOrCopy(Path source, Path target) throws IOException {
+    try {
+      Files.createLink(target, source);
+    } catch (UnsupportedOperationException | IOException e) {
+      Files.copy(source, target, REPLACE_EXISTING);
+    }
+  }
+
+  @Override
+  @SneakyThrows
+  public synchronized void purge() {
+    while (numPendingSpills > 0) {
+      wait();
+    }
+    for (val runFile : runFiles) {
+      if (runFile != null) {
+        Files.deleteIfExists(runFile);
+      }
+    }
+    runFiles.clear();
+    buffer = newArrayList();
+  }
+
+  @Override
+  public void close() throws IOException {
+    purge();
+  }
+
+  public static <T> ExternalSorter<T> createExternalSorter(String name, Serializer<T> serializer,
+      Comparator<T> comparator, Path outputDir, final int maxBufferSize) {
+    return createExternalSorter(name, serializer, comparator, outputDir, maxBufferSize, DEFAULT_MAX_FAN_IN);
+  }
+
+  public static <T> ExternalSorter<T> createExternalSorter(String name, Serializer<T> serializer,
+      Comparator<T> comparator, Path outputDir, final int maxBufferSize, final int maxFanIn) {
+    return new ExternalSorter<T>(name, serializer, comparator, outputDir, maxBufferSize, maxFanIn);
+  }
+
+  private class RunReader {
+
+    private final int runIndex;
+    private final DataInputStream input;
+    private T head;
+
+    @SneakyThrows
+    private RunReader(final int runIndex, Path runFile) {
+      this.runIndex = runIndex;
+      this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), IO_BUFFER_SIZE));
+      advance();
+    }
+
+    @SneakyThrows
+    private void advance() {
+      final int length;
+      try {
+        length = input.readInt();
+      } catch (EOFException e) {
+        head = null;
+        return;
+      }
+      val bytes = new byte[length];
+      input.readFully(bytes);
+      head = serializer.deserialize(new DataInput2.ByteArray(bytes), length);
+    }
+
+    @SneakyThrows
+    private void close() {
+      input.close();
+    }
+
+  }
+
+  private class MergeIterator implements Iterator<T> {
+
+    private final PriorityQueue<RunReader> queue;
+
+    private MergeIterator(List<RunReader> readers) {
+      // Ties are broken by run index, which keeps the merge stable
+      Comparator<RunReader> readerComparator = (a, b) -> comparator.compare(a.head, b.head);
+      this.queue = new PriorityQueue<>(Math.max(1, readers.size()),
+          readerComparator.thenComparingInt(r -> r.runIndex));
+      readers.stream()
+          .filter(r -> r.head != null)
+          .forEach(queue::add);
+    }
+
+    @Override public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    @Override public T next() {
+      if (queue.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      val reader = queue.poll();
+      val object = reader.head;
+      reader.advance();
+      if (reader.head != null) {
+        queue.add(reader);
+      }
+      return object;
+    }
+
+  }
+
+}
@@ -1,13 +1,20 @@
 package org.icgc.dcc.ga4gh.loader;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.util.set.Sets;
+import org.icgc.dcc.ga4gh.common.GenomicBins;
+import org.icgc.dcc.ga4gh.common.MapDBSerialzers.ObjectSerializer;
+import org.icgc.dcc.ga4gh.common.MapDBSerialzers.StringObjectMapSerializer;
 import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
@@ -15,31 +22,46 @@ import org.icgc.dcc.ga4gh.common.model.es.EsBasicCall;
 import org.icgc.dcc.ga4gh.common.model.es.EsBasicCall.EsBasicCallSerializer;
 import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
 import org.icgc.dcc.ga4gh.loader.factory.Factory;
+import org.icgc.dcc.ga4gh.loader.indexing.PartitionedVariantIndexer;
 import org.icgc.dcc.ga4gh.loader.persistance.FileObjectRestorerFactory;
+import org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantReader;
+import org.icgc.dcc.ga4gh.loader.utils.columnar.ColumnarVariantWriter;
 import org.icgc.dcc.ga4gh.loader.utils.counting.LongCounter;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.context.IdStorageContext;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.context.impl.IdStorageContextImpl;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.context.impl.UIntIdStorageContext;
-import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.ContentHashVariantIdGenerator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.MapVariantAggregator;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.id.impl.VariantIdContext;
 import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.DiskMapStorage;
+import org.icgc.dcc.ga4gh.loader.utils.idstorage.storage.impl.LogStructuredMapStorage;
+import org.icgc.dcc.ga4gh.loader.utils.sort.ExternalSorter;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mapdb.DataInput2;
 import org.mapdb.DataOutput2;
 import org.mapdb.Serializer;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Integer.MIN_VALUE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.icgc.dcc.common.core.util.Formats.formatRate;
 import static org.icgc.dcc.common.core.util.stream.Collectors.toImmutableSet;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.createEsVariantCallPairSourceDecoder;
 import static org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair.createEsVariantCallPair;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_CONSENSUS_CALL_SERIALIZER;
 import static org.icgc.dcc.ga4gh.loader.factory.Factory.ES_VARIANT_SERIALIZER;
@@ -56,6 +78,31 @@ public class DaoTest {
   private static final Path TEST_FIXTURES_DIRPATH= TEST_RESOURCES_DIRPATH.resolve("fixtures");
   private static final Path TEST_VCF_FILES_DIRPATH= TEST_FIXTURES_DIRPATH.resolve("dummyVCFFiles");
 
+  private static EsVariant createTestVariant(String ... alternativeBases) {
+    return EsVariant.builder()
+        .start(4)
+        .end(50)
+        .referenceBases("GAA")
+        .alternativeBases(newArrayList(alternativeBases))
+        .referenceName("1")
+        .build();
+  }
+
+  /**
+   * Two calls, for the callSets 1 and 2, sharing the same info
+   */
+  private static EsVariantCallPair createTestVariantCallPair(Map<String, Object> info) {
+    val calls = newArrayList(1, 2).stream()
+        .map(i -> EsConsensusCall.builder()
+            .callSetId(i)
+            .callSetName("callSet" + i)
+            .info(info)
+            .variantSetIds(newArrayList(i, i + 10))
+            .build())
+        .collect(Collectors.toList());
+    return createEsVariantCallPair(createTestVariant("GAT", "G"), calls);
+  }
+
 
   @Test
   @SneakyThrows
@@ -563,6 +610,86 @@ public class DaoTest {
   }
 
 
+  @Test
+  @SneakyThrows
+  public void testInfoMapSerialization() {
+    val info = Maps.<String, Object>newHashMap();
+    info.put("Callers", newArrayList("broad", "dkfz", "sanger"));
+    info.put("NumCallers", 3);
+    info.put("VAF", 0.25);
+    info.put("t_alt_count", -12);
+    info.put("unknownLong", 1234567890123L);
+    info.put("unknownFloat", 1.5f);
+    info.put("unknownFlag", true);
+    info.put("unknownNull", null);
+    info.put("unknownString", "string");
+
+    val serializer = new StringObjectMapSerializer();
+    val dataOutput2 = new DataOutput2();
+    serializer.serialize(dataOutput2, info);
+    val output = serializer.deserialize(new DataInput2.ByteArray(dataOutput2.copyBytes()), 0);
+    assertThat(output).isEqualTo(info);
+  }
+
+  @Test
+  @SneakyThrows
+  public void testLegacyInfoMapDeserialization() {
+    val info = Maps.<String, Object>newHashMap();
+    info.put("Callers", newArrayList("broad", "dkfz"));
+    info.put("NumCallers", 2);
+
+    // Legacy format: number of keys, then the UTF key and java serialized value of every entry
+    val objectSerializer = new ObjectSerializer();
+    val dataOutput2 = new DataOutput2();
+    dataOutput2.packInt(info.size());
+    for (val entry : info.entrySet()) {
+      dataOutput2.writeUTF(entry.getKey());
+      objectSerializer.serialize(dataOutput2, entry.getValue());
+    }
+
+    val serializer = new StringObjectMapSerializer();
+    val output = serializer.deserialize(new DataInput2.ByteArray(dataOutput2.copyBytes()), 0);
+    assertThat(output).isEqualTo(info);
+  }
+
+  @Test
+  @SneakyThrows
+  public void testColumnarVariantRoundTrip() {
+    val info = Maps.<String, Object>newHashMap();
+    info.put("Callers", newArrayList("broad", "dkfz"));
+    info.put("VAF", 0.5);
+
+    val input = Lists.<VariantIdContext<Long>>newArrayList();
+    for (int i = 0; i < 10; i++) {
+      val variant = EsVariant.builder()
+          .referenceName(i < 5 ? "1" : "X")
+          .start(1000 - i * 10)
+          .end(1001 - i * 10 + i % 3)
+          .referenceBases(i % 2 == 0 ? "ACGTA" : "N")
+          .alternativeBases(newArrayList("T", "GG<DEL>"))
+          .build();
+      val calls = newArrayList(EsConsensusCall.builder()
+          .callSetId(i)
+          .callSetName("callSet" + (i % 3))
+          .variantSetIds(newArrayList(1, i))
+          .info(info)
+          .build());
+      // The last chunk has 63 bit content hash like ids, which are stored as fixed size values instead of deltas
+      val id = i < 8 ? (long) i * 3 : Long.MAX_VALUE - i * 0x9E3779B97F4A7C1L;
+      input.add(VariantIdContext.createVariantIdContext(id, createEsVariantCallPair(variant, calls)));
+    }
+
+    val path = RESOURCE_PERSISTED_PATH.resolve("testColumnar.col");
+    try (val writer = ColumnarVariantWriter.createColumnarVariantWriter(path, 4)) {
+      input.forEach(writer::write);
+    }
+    try (val reader = ColumnarVariantReader.createColumnarVariantReader(path)) {
+      assertThat(reader.getNumChunks()).isEqualTo(3);
+      assertThat(reader.getNumVariants()).isEqualTo(10);
+      assertThat(reader.streamVariantIdContext().collect(Collectors.toList())).isEqualTo(input);
+    }
+  }
+
   @Test
   @SneakyThrows
   public void testMapDbSanity() {
@@ -582,6 +709,211 @@ public class DaoTest {
 
   }
 
+  @Test
+  @SneakyThrows
+  public void testLogStructuredMapStorage() {
+    val mapStorage = LogStructuredMapStorage.createLogStructuredMapStorage("testLogStructured",
+        ES_VARIANT_SERIALIZER, ES_CONSENSUS_CALL_SERIALIZER, RESOURCE_PERSISTED_PATH);
+    val variant1 = EsVariant.builder()
+        .start(4)
+        .end(50)
+        .referenceBases("GAA")
+        .alternativeBases(newArrayList("GAT"))
+        .referenceName("1")
+        .build();
+    val variant2 = EsVariant.builder()
+        .start(100)
+        .end(101)
+        .referenceBases("C")
+        .alternativeBases(newArrayList("T"))
+        .referenceName("X")
+        .build();
+    val calls = newArrayList(1, 2, 3).stream()
+        .map(i -> EsConsensusCall.builder()
+            .callSetId(i)
+            .callSetName("callSet" + i)
+            .info(Maps.newHashMap())
+            .variantSetIds(newArrayList(i))
+            .build())
+        .collect(Collectors.toList());
+
+    mapStorage.append(variant1, calls.get(0));
+    mapStorage.append(variant2, calls.get(1));
+    mapStorage.append(variant1, calls.get(2));
+
+    val map = mapStorage.getMap();
+    assertThat(map).hasSize(2);
+    assertThat(map.get(variant1)).containsExactly(calls.get(0), calls.get(2));
+    assertThat(map.get(variant2)).containsExactly(calls.get(1));
+
+    map.put(variant2, newArrayList(calls.get(2), calls.get(0)));
+    assertThat(map.get(variant2)).containsExactly(calls.get(2), calls.get(0));
+    mapStorage.close();
+  }
+
+  @Test
+  @SneakyThrows
+  public void testExternalSorter() {
+    val sorter = ExternalSorter.createExternalSorter("testSorter", Serializer.LONG,
+        Comparator.<Long>naturalOrder(), RESOURCE_PERSISTED_PATH, 3);
+    val input = newArrayList(9L, 4L, 7L, 1L, 8L, 2L, 2L, 6L, 3L, 5L);
+    input.forEach(sorter::add);
+    assertThat(sorter.getNumRuns()).isEqualTo(3);
+
+    try (val sorted = sorter.streamSorted()) {
+      assertThat(sorted.collect(Collectors.toList())).containsExactly(1L, 2L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+    }
+    sorter.close();
+  }
+
+  @Test
+  @SneakyThrows
+  public void testExternalSorterMultiPassMerge() {
+    val sorter = ExternalSorter.createExternalSorter("testMultiPassSorter", Serializer.LONG,
+        Comparator.<Long>naturalOrder(), RESOURCE_PERSISTED_PATH, 2, 2);
+    val input = newArrayList(9L, 4L, 7L, 1L, 8L, 2L, 2L, 6L, 3L, 5L, 0L);
+    input.forEach(sorter::add);
+    assertThat(sorter.getNumRuns()).isEqualTo(5);
+
+    try (val sorted = sorter.streamSorted()) {
+      assertThat(sorted.collect(Collectors.toList())).containsExactly(0L, 1L, 2L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+    }
+    assertThat(sorter.getNumRuns()).isEqualTo(2);
+    sorter.close();
+  }
+
+  @Test
+  @SneakyThrows
+  public void testSmileEncoderMatchesJsonConverter() {
+    val info = Maps.<String, Object>newHashMap();
+    info.put("Callers", newArrayList("broad", "dkfz"));
+    info.put("VAF", 0.25);
+    info.put("NumCallers", 2);
+    val esVariantCallPair = createTestVariantCallPair(info);
+
+    val bytes = Factory.ES_VARIANT_CALL_PAIR_SMILE_ENCODER.encode(esVariantCallPair, 7L);
+    val actual = new ObjectMapper(new SmileFactory()).readTree(bytes);
+    val expected = Factory.ES_VARIANT_CALL_PAIR_CONVERTER_JSON_2.convertToObjectNode(esVariantCallPair)
+        .put(DOC_ID, 7); // SMILE writes longs that fit in an int as ints
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  @Test
+  @SneakyThrows
+  public void testSourceDecoderReadsSmileAndJsonSources() {
+    val nested = Maps.<String, Object>newHashMap();
+    nested.put("VAF", "0.25");
+    val info = Maps.<String, Object>newHashMap();
+    info.put("Callers", newArrayList("broad", "dkfz"));
+    info.put("NumCallers", "2");
+    info.put("Nested", nested);
+    val esVariantCallPair = createTestVariantCallPair(info);
+    val decoder = createEsVariantCallPairSourceDecoder();
+
+    val smileSource = new BytesArray(Factory.ES_VARIANT_CALL_PAIR_SMILE_ENCODER.encode(esVariantCallPair, 7L));
+    val jsonSource = new BytesArray(new ObjectMapper().writeValueAsBytes(
+        Factory.ES_VARIANT_CALL_PAIR_CONVERTER_JSON_2.convertToObjectNode(esVariantCallPair)));
+    assertThat(decoder.decode(smileSource)).isEqualTo(esVariantCallPair);
+    assertThat(decoder.decode(jsonSource)).isEqualTo(esVariantCallPair);
+
+    val filtered = decoder.decode(smileSource, ImmutableSet.of("2"));
+    assertThat(filtered.getVariant()).isEqualTo(esVariantCallPair.getVariant());
+    assertThat(filtered.getCalls()).containsExactly(esVariantCallPair.getCalls().get(1));
+    assertThat(decoder.decode(jsonSource, ImmutableSet.of()).getCalls()).isEmpty();
+  }
+
+  @Test
+  @SneakyThrows
+  public void testExternalSorterCheckpoint() {
+    Files.createDirectories(RESOURCE_PERSISTED_PATH);
+    val checkpointDir = Files.createTempDirectory(RESOURCE_PERSISTED_PATH, "sorterCheckpoint");
+    val sorter = ExternalSorter.createExternalSorter("testCheckpointSorter", Serializer.LONG,
+        Comparator.<Long>naturalOrder(), RESOURCE_PERSISTED_PATH, 3);
+    newArrayList(9L, 4L, 7L, 1L).forEach(sorter::add);
+    sorter.checkpoint(checkpointDir);
+
+    newArrayList(8L, 2L, 6L).forEach(sorter::add);
+    sorter.restore(checkpointDir);
+
+    try (val sorted = sorter.streamSorted()) {
+      assertThat(sorted.collect(Collectors.toList())).containsExactly(1L, 4L, 7L, 9L);
+    }
+    sorter.close();
+  }
+
+  @Test(timeout = 60000)
+  public void testPartitionedVariantIndexer() {
+    val numVariants = 1000L;
+    val numPartitions = 4;
+    val blockSize = 3;
+    val esVariantCallPair = createTestVariantCallPair(Maps.newHashMap());
+
+    // Partition threads are named by their partition number, so the thread that wrote an id is its partition
+    final List<Map<Long, String>> runs = newArrayList();
+    for (int run = 0; run < 2; run++) {
+      val partitionsById = Maps.<Long, String>newConcurrentMap();
+      val numWritten = PartitionedVariantIndexer.createPartitionedVariantIndexer(
+          x -> assertThat(partitionsById.put(x.getId(), Thread.currentThread().getName())).isNull(),
+          numPartitions, blockSize)
+          .index(LongStream.range(0, numVariants)
+              .mapToObj(id -> VariantIdContext.createVariantIdContext(id, esVariantCallPair)));
+      assertThat(numWritten).isEqualTo(numVariants);
+      assertThat(partitionsById).hasSize((int) numVariants);
+      runs.add(partitionsById);
+    }
+    assertThat(runs.get(1)).isEqualTo(runs.get(0));
+    runs.get(0).forEach((id, threadName) -> assertThat(threadName).endsWith("-" + (id / blockSize) % numPartitions));
+
+    // A failing writer stops its partition, and the failure reaches the caller instead of blocking the reader
+    val failingIndexer = PartitionedVariantIndexer.createPartitionedVariantIndexer(x -> {
+      if (x.getId() == 500L) {
+        throw new IllegalStateException("Failed to write variant 500");
+      }
+    }, numPartitions, blockSize);
+    try {
+      failingIndexer.index(LongStream.range(0, numVariants)
+          .mapToObj(id -> VariantIdContext.createVariantIdContext(id, esVariantCallPair)));
+      fail("The failure of the writer was not rethrown");
+    } catch (Exception e) {
+      assertThat(Throwables.getRootCause(e)).hasMessage("Failed to write variant 500");
+    }
+  }
+
+  @Test
+  public void testContentHashVariantIdsAreStableAcrossLoads() {
+    val variant = createTestVariant("GAT", "G");
+    val otherVariant = createTestVariant("GATG");
+
+    long firstLoadId;
+    try (val generator = ContentHashVariantIdGenerator.createContentHashVariantIdGenerator(0)) {
+      firstLoadId = generator.generateId(variant);
+      assertThat(generator.generateId(otherVariant)).isNotEqualTo(firstLoadId);
+
+      // The same variant twice within one load is treated as a collision and rehashed
+      assertThat(generator.generateId(variant)).isNotEqualTo(firstLoadId);
+      assertThat(generator.getNumCollisions()).isEqualTo(1);
+    }
+    try (val generator = ContentHashVariantIdGenerator.createContentHashVariantIdGenerator(0)) {
+      assertThat(generator.generateId(variant)).isEqualTo(firstLoadId);
+    }
+    assertThat(firstLoadId).isNotNegative();
+  }
+
+  @Test
+  public void testOverlappingBinsContainEveryContainedVariantBin() {
+    val regionStart = 1000000L;
+    val regionEnd = 9500000L;
+    val bins = GenomicBins.getOverlappingBins(regionStart, regionEnd);
+    for (long start = regionStart; start < regionEnd; start += 99991) {
+      for (val length : newArrayList(1L, 1000L, 200000L, 3000000L)) {
+        val end = Math.min(start + length, regionEnd);
+        assertThat(bins).contains(GenomicBins.getBin(start, end));
+      }
+    }
+    assertThat(GenomicBins.getBin(1, 11)).isEqualTo("585");
+    assertThat(GenomicBins.getOverlappingBins(0, GenomicBins.MAX_BIN_POSITION)).isEmpty();
+  }
+
   @Test
   @SneakyThrows
   @Ignore
@@ -592,7 +924,7 @@ public class DaoTest {
     val map = DiskMapStorage.newDiskMapStorage(path.getFileName().toString().replaceAll("\\.db",""),Factory.ES_VARIANT_SERIALIZER, Factory.ES_CONSENSUS_CALL_LIST_SERIALIZER, parent, Config.VARIANT_MAPDB_ALLOCATION,true );
     log.info("sdfsdf");
 
-    val variantAggregator = VariantAggregator.createVariantAggregator(map);
+    val variantAggregator = MapVariantAggregator.createMapVariantAggregator(map);
     val d = variantAggregator.streamVariantIdContext()
         .filter(x -> x.getEsVariantCallPair().getCalls().size()>2)
         .limit(100)
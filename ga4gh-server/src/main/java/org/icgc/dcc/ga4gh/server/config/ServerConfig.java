@@ -17,39 +17,56 @@
  */
 package org.icgc.dcc.ga4gh.server.config;
 
+import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.unit.TimeValue;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
+import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.server.reference.ReferenceGenome;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import static java.lang.System.getProperty;
+import static org.icgc.dcc.ga4gh.common.IndexAliases.resolveIndices;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.createEsVariantCallPairSourceDecoder;
 import static org.icgc.dcc.ga4gh.server.Factory.newClient;
 
+@Slf4j
 @Configuration
 public class ServerConfig {
 
+  /*
+   * Serving alias maintained by the loader; Elasticsearch resolves it on every request, so reloads need no restart
+   */
   public static final String INDEX_NAME = getProperty("index_name", "dcc-variants");
+  /*
+   * Filter regions on the precomputed bin field first. Requires an index loaded with bins
+   */
+  public static final boolean BIN_FILTER_ENABLED = parseBoolean(getProperty("bin_filter_enabled", "false"));
+  /*
+   * Upper bound on the calls one call set has on a variant, one per VCF file of the sample that contains it. Sizes
+   * the inner hits that return the calls of the requested call sets
+   */
+  public static final int MAX_CALLS_PER_CALL_SET = parseInt(getProperty("max_calls_per_call_set", "4"));
   public static final String NODE_ADDRESS = getProperty("node_address", "localhost");
   public static final int NODE_PORT = parseInt(getProperty("node_port", "9300"));
   public static final String FASTA_FILE_LOC = "target/GRCh37.fasta";
-  public static final TimeValue DEFAULT_SCROLL_TIMEOUT = TimeValue.timeValueMinutes(5);
   public static final int DEFAULT_PAGE_SIZE  = 10;
 
   public static String toConfigString() {
     return String.format(
         "INDEX_NAME: %s"
+            + "\nBIN_FILTER_ENABLED: %s"
+            + "\nMAX_CALLS_PER_CALL_SET: %s"
             + "\nNODE_ADDRESS: %s"
             + "\nNODE_PORT: %s",
         INDEX_NAME,
+        BIN_FILTER_ENABLED,
+        MAX_CALLS_PER_CALL_SET,
         NODE_ADDRESS,
         NODE_PORT);
   }
@@ -61,7 +78,22 @@ public class ServerConfig {
 
   @Bean
   public Client client() {
-    return newClient();
+    val client = newClient();
+    logIndexResolution(client);
+    return client;
+  }
+
+  private static void logIndexResolution(Client client) {
+    try {
+      val indexNames = resolveIndices(client, INDEX_NAME);
+      if (indexNames.isEmpty()) {
+        log.warn("[{}] does not resolve to any index yet", INDEX_NAME);
+      } else {
+        log.info("[{}] resolves to {}", INDEX_NAME, indexNames);
+      }
+    } catch (Exception e) {
+      log.warn("Could not resolve [{}]: {}", INDEX_NAME, e.getMessage());
+    }
   }
 
   @Bean
@@ -75,10 +107,8 @@ public class ServerConfig {
   }
 
   @Bean
-  public EsVariantCallPairConverterJson esVariantCallPairConverterJson() {
-    val varConv = new EsVariantConverterJson();
-    val callConv = new EsConsensusCallConverterJson();
-    return new EsVariantCallPairConverterJson(varConv, callConv, varConv, callConv);
+  public EsVariantCallPairSourceDecoder esVariantCallPairSourceDecoder() {
+    return createEsVariantCallPairSourceDecoder();
   }
 
 }
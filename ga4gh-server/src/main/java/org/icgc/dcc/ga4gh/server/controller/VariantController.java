@@ -17,13 +17,16 @@
  */
 package org.icgc.dcc.ga4gh.server.controller;
 
+import lombok.val;
 import org.icgc.dcc.ga4gh.server.variant.VariantService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import ga4gh.VariantServiceOuterClass.GetCallSetRequest;
 import ga4gh.VariantServiceOuterClass.GetVariantRequest;
@@ -38,15 +41,46 @@ import ga4gh.Variants.CallSet;
 import ga4gh.Variants.Variant;
 import ga4gh.Variants.VariantSet;
 
+import static org.icgc.dcc.ga4gh.server.variant.SearchVariantsResponseWriter.createJsonWriter;
+import static org.icgc.dcc.ga4gh.server.variant.SearchVariantsResponseWriter.createProtobufWriter;
+import static org.icgc.dcc.ga4gh.server.variant.VariantProjection.parseVariantProjection;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 @RestController
 public class VariantController {
 
+  private static final String PROTOBUF_VALUE = "application/x-protobuf";
+  private static final String FIELDS = "fields";
+  private static final String DEFAULT_FIELDS = "all";
+
   @Autowired
   private VariantService variantService;
 
+  /**
+   * The fields parameter projects the variants: "all" (default) or "coordinates", which omits every call
+   */
   @PostMapping("/variants/search")
-  public SearchVariantsResponse searchVariants(@RequestBody SearchVariantsRequest request) {
-    return variantService.searchVariants(request);
+  public SearchVariantsResponse searchVariants(@RequestBody SearchVariantsRequest request,
+      @RequestParam(value = FIELDS, defaultValue = DEFAULT_FIELDS) String fields) {
+    return variantService.searchVariants(request, parseVariantProjection(fields));
+  }
+
+  /**
+   * Streams the response one variant at a time, as protobuf or JSON depending on the Accept header. A failure
+   * propagates after the response was committed, which aborts it instead of completing the document
+   */
+  @PostMapping(value = "/variants/search/stream", produces = PROTOBUF_VALUE)
+  public StreamingResponseBody streamVariantsAsProtobuf(@RequestBody SearchVariantsRequest request,
+      @RequestParam(value = FIELDS, defaultValue = DEFAULT_FIELDS) String fields) {
+    val projection = parseVariantProjection(fields);
+    return outputStream -> variantService.searchVariants(request, projection, createProtobufWriter(outputStream));
+  }
+
+  @PostMapping(value = "/variants/search/stream", produces = APPLICATION_JSON_VALUE)
+  public StreamingResponseBody streamVariantsAsJson(@RequestBody SearchVariantsRequest request,
+      @RequestParam(value = FIELDS, defaultValue = DEFAULT_FIELDS) String fields) {
+    val projection = parseVariantProjection(fields);
+    return outputStream -> variantService.searchVariants(request, projection, createJsonWriter(outputStream));
   }
 
   @GetMapping("/variants/{variantId:(?!search).+}")
@@ -40,9 +40,6 @@ import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.elasticsearch.search.aggregations.metrics.min.Min;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.server.config.ServerConfig;
 import org.icgc.dcc.ga4gh.server.variant.CallSetRepository;
@@ -61,6 +58,7 @@ import static java.lang.Integer.parseInt;
 import static java.lang.System.getProperty;
 import static org.icgc.dcc.common.core.util.Joiners.NEWLINE;
 import static org.icgc.dcc.common.core.util.Joiners.SEMICOLON;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.createEsVariantCallPairSourceDecoder;
 import static org.icgc.dcc.ga4gh.server.Factory.newClient;
 import static org.icgc.dcc.ga4gh.server.config.ServerConfig.INDEX_NAME;
 import static org.icgc.dcc.ga4gh.server.performance.SearchRequestSweepIterator.createSearchRequestSweepIterator;
@@ -125,12 +123,9 @@ public class Performance implements Runnable {
       val headerRepo = new HeaderRepository(client);
       val callSetRepo = new CallSetRepository(client);
       val variantSetRepo = new VariantSetRepository(client);
-      val esVariantConverter = new EsVariantConverterJson();
       val esVariantSetConverter = new EsVariantSetConverterJson();
       val esCallSetConverter = new EsCallSetConverterJson();
-      val esCallConverter = new EsConsensusCallConverterJson();
-      val esVariantCallPairConverter = new EsVariantCallPairConverterJson(esVariantConverter
-          , esCallConverter, esVariantConverter, esCallConverter);
+      val esVariantCallPairDecoder = createEsVariantCallPairSourceDecoder();
 
       val startGen = createUniConstrainedRandomIntegerGenerator(13,249240613-variantLength);
       val variantSetGen = createUniConstrainedRandomIntegerGenerator(0, 19);
@@ -141,7 +136,7 @@ public class Performance implements Runnable {
 
       val searchVariantsRequestGenerator = createSearchVariantsRequestGenerator(startGen,variantSetGen,callSetGen,refGen,10,variantLength);
       val variantService =
-          new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairConverter);
+          new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairDecoder);
       val performanceTest = Performance.builder()
           .numSamples(sampleNum)
           .variantService(variantService)
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.server.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.Message;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.val;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.Base64;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static lombok.AccessLevel.PRIVATE;
+import static org.icgc.dcc.ga4gh.server.errors.GAServerException.createGAServerException;
+import static org.icgc.dcc.ga4gh.server.errors.GAVariantSearchErrors.PAGE_TOKEN_DNE;
+
+/**
+ * Stateless page tokens for search_after paging. A token is the Base64 of a JSON document holding the original
+ * search request, the sort values of the last returned hit and the number of hits returned so far, so every page is
+ * a fresh query and no scroll context is kept on the data nodes.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public final class PageTokens {
+
+  public static final String NO_MORE_PAGES = "";
+
+  private static final String PAGE_TOKEN_FIELD_NAME = "page_token";
+  private static final String QUERY = "query";
+  private static final String SEARCH_AFTER = "search_after";
+  private static final String NUM_RETURNED = "num_returned";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  public static boolean isFirstPage(@NonNull String pageToken) {
+    return NO_MORE_PAGES.equals(pageToken);
+  }
+
+  /**
+   * The request the page token was created for, or the request itself for the first page
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Message> T resolveQuery(@NonNull T request, @NonNull String pageToken) {
+    if (isFirstPage(pageToken)) {
+      return request;
+    }
+    val query = decode(pageToken).path(QUERY);
+    try {
+      return (T) request.newBuilderForType()
+          .mergeFrom(DECODER.decode(query.asText()))
+          .build();
+    } catch (Exception e) {
+      throw invalidPageToken(pageToken);
+    }
+  }
+
+  /**
+   * Continues the search after the last hit of the previous page
+   */
+  public static void setSearchAfter(@NonNull SearchRequestBuilder searchRequestBuilder, @NonNull String pageToken) {
+    if (!isFirstPage(pageToken)) {
+      val searchAfter = decode(pageToken).path(SEARCH_AFTER);
+      if (!searchAfter.isArray() || searchAfter.size() == 0) {
+        throw invalidPageToken(pageToken);
+      }
+      searchRequestBuilder.searchAfter(MAPPER.convertValue(searchAfter, Object[].class));
+    }
+  }
+
+  /**
+   * Token of the page following the response, or NO_MORE_PAGES once every hit has been returned. The sort of the
+   * search must end with a unique tie breaker, otherwise hits sharing the last sort values are skipped.
+   */
+  public static String createNextPageToken(@NonNull Message request, @NonNull String pageToken,
+      @NonNull SearchResponse response) {
+    val hits = response.getHits().getHits();
+    if (hits.length == 0) {
+      return NO_MORE_PAGES;
+    }
+    val numReturned = getNumReturned(pageToken) + hits.length;
+    if (numReturned >= response.getHits().getTotalHits()) {
+      return NO_MORE_PAGES;
+    }
+    val lastHit = hits[hits.length - 1];
+    checkArgument(lastHit.getSortValues().length > 0, "The search of [%s] is not sorted",
+        request.getDescriptorForType().getName());
+
+    val query = resolveQuery(request, pageToken).toBuilder()
+        .clearField(request.getDescriptorForType().findFieldByName(PAGE_TOKEN_FIELD_NAME))
+        .build();
+    val token = MAPPER.createObjectNode();
+    token.put(QUERY, ENCODER.encodeToString(query.toByteArray()));
+    token.set(SEARCH_AFTER, MAPPER.valueToTree(lastHit.getSortValues()));
+    token.put(NUM_RETURNED, numReturned);
+    return encode(token);
+  }
+
+  private static long getNumReturned(String pageToken) {
+    return isFirstPage(pageToken) ? 0 : decode(pageToken).path(NUM_RETURNED).asLong();
+  }
+
+  private static String encode(JsonNode token) {
+    try {
+      return ENCODER.encodeToString(MAPPER.writeValueAsBytes(token));
+    } catch (Exception e) {
+      throw new IllegalStateException("Could not encode the page token", e);
+    }
+  }
+
+  private static JsonNode decode(String pageToken) {
+    try {
+      return MAPPER.readTree(DECODER.decode(pageToken));
+    } catch (Exception e) {
+      throw invalidPageToken(pageToken);
+    }
+  }
+
+  private static RuntimeException invalidPageToken(String pageToken) {
+    return createGAServerException(PAGE_TOKEN_DNE, "The page token [%s] is not valid", pageToken);
+  }
+
+}
@@ -27,7 +27,6 @@ import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.sort.SortOrder;
 import org.icgc.dcc.ga4gh.server.config.ServerConfig;
 import org.springframework.stereotype.Repository;
@@ -36,11 +35,13 @@ import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.BIO_SAMPLE_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.NAME;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_IDS;
 import static org.icgc.dcc.ga4gh.common.TypeNames.CALL_SET;
 import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_PAGE_SIZE;
-import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_SCROLL_TIMEOUT;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.resolveQuery;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.setSearchAfter;
 
 /**
  * Perform queries against elasticsearch to find desired variants.
@@ -58,30 +59,22 @@ public class CallSetRepository {
     return client.prepareSearch(ServerConfig.INDEX_NAME)
         .setTypes(CALL_SET)
         .addSort(NAME, SortOrder.ASC)
+        .addSort(DOC_ID, SortOrder.ASC)
         .setSize(size);
   }
-  private SearchRequestBuilder createScrollSearchRequest(final int size, TimeValue timeValue) {
-    return createSearchRequest(size).setScroll(timeValue);
-  }
-
-  private static boolean isNewRequest(SearchCallSetsRequest request){
-    return "".equals(request.getPageToken());
-  }
 
   public SearchResponse findCallSets(@NonNull SearchCallSetsRequest request) {
     val pageSize = resolvePageSize(request);
-    if(isNewRequest(request)){
-      val searchRequestBuilder = createScrollSearchRequest(pageSize, DEFAULT_SCROLL_TIMEOUT);
-      val query = boolQuery()
-          .filter(
-              boolQuery()
-                  .must(matchQuery(VARIANT_SET_IDS, request.getVariantSetId()))
-                  .must(matchQuery(NAME, request.getName()))
-                  .must(matchQuery(BIO_SAMPLE_ID, request.getBioSampleId())));
-      return searchRequestBuilder.setQuery(query).get();
-    } else {
-      return client.prepareSearchScroll(request.getPageToken()).setScroll(DEFAULT_SCROLL_TIMEOUT).get();
-    }
+    val callSetsRequest = resolveQuery(request, request.getPageToken());
+    val searchRequestBuilder = createSearchRequest(pageSize);
+    val query = boolQuery()
+        .filter(
+            boolQuery()
+                .must(matchQuery(VARIANT_SET_IDS, callSetsRequest.getVariantSetId()))
+                .must(matchQuery(NAME, callSetsRequest.getName()))
+                .must(matchQuery(BIO_SAMPLE_ID, callSetsRequest.getBioSampleId())));
+    setSearchAfter(searchRequestBuilder, request.getPageToken());
+    return searchRequestBuilder.setQuery(query).get();
   }
 
   public GetResponse findCallSetById(@NonNull GetCallSetRequest request) {
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.server.variant;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.google.protobuf.CodedOutputStream;
+import com.googlecode.protobuf.format.JsonFormat;
+import ga4gh.Variants.Variant;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static com.google.common.base.Preconditions.checkState;
+import static ga4gh.VariantServiceOuterClass.SearchVariantsResponse.NEXT_PAGE_TOKEN_FIELD_NUMBER;
+import static ga4gh.VariantServiceOuterClass.SearchVariantsResponse.VARIANTS_FIELD_NUMBER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static lombok.AccessLevel.PRIVATE;
+
+/**
+ * Writes a SearchVariantsResponse one variant at a time, so a page is never held in memory as a whole. The
+ * next page token is written last and completes the document, without closing the stream. If the search fails
+ * before that, the document is left incomplete, so the client can not mistake a partial page for a whole one.
+ */
+public interface SearchVariantsResponseWriter {
+
+  void writeVariant(Variant variant) throws IOException;
+
+  void writeNextPageToken(String nextPageToken) throws IOException;
+
+  /**
+   * Protobuf wire format of SearchVariantsResponse. Each variant is written as its own length delimited variants
+   * field, so the stream parses as a regular SearchVariantsResponse.
+   */
+  static SearchVariantsResponseWriter createProtobufWriter(@NonNull OutputStream outputStream) {
+    return new ProtobufWriter(CodedOutputStream.newInstance(outputStream));
+  }
+
+  /**
+   * Same JSON document as the ProtobufHttpMessageConverter, with the variants written as a streaming array
+   */
+  static SearchVariantsResponseWriter createJsonWriter(@NonNull OutputStream outputStream) {
+    return new JsonWriter(new OutputStreamWriter(outputStream, UTF_8));
+  }
+
+  @RequiredArgsConstructor(access = PRIVATE)
+  class ProtobufWriter implements SearchVariantsResponseWriter {
+
+    @NonNull private final CodedOutputStream output;
+
+    private boolean completed = false;
+
+    @Override
+    public void writeVariant(@NonNull Variant variant) throws IOException {
+      checkState(!completed, "The response was already completed by the next page token");
+      output.writeMessage(VARIANTS_FIELD_NUMBER, variant);
+    }
+
+    @Override
+    public void writeNextPageToken(@NonNull String nextPageToken) throws IOException {
+      checkState(!completed, "The response was already completed by the next page token");
+      if (!nextPageToken.isEmpty()) {
+        output.writeString(NEXT_PAGE_TOKEN_FIELD_NUMBER, nextPageToken);
+      }
+      output.flush();
+      completed = true;
+    }
+
+  }
+
+  @RequiredArgsConstructor(access = PRIVATE)
+  class JsonWriter implements SearchVariantsResponseWriter {
+
+    private static final JsonFormat JSON_FORMAT = new JsonFormat();
+    private static final JsonStringEncoder STRING_ENCODER = JsonStringEncoder.getInstance();
+
+    @NonNull private final Writer writer;
+
+    private int numVariants = 0;
+    private boolean completed = false;
+
+    @Override
+    public void writeVariant(@NonNull Variant variant) throws IOException {
+      checkState(!completed, "The response was already completed by the next page token");
+      writer.write(numVariants++ == 0 ? "{\"variants\": [" : ", ");
+      writer.write(JSON_FORMAT.printToString(variant));
+    }
+
+    @Override
+    public void writeNextPageToken(@NonNull String nextPageToken) throws IOException {
+      checkState(!completed, "The response was already completed by the next page token");
+      writer.write(numVariants == 0 ? "{\"variants\": []" : "]");
+      if (!nextPageToken.isEmpty()) {
+        writer.write(", \"next_page_token\": \"");
+        writer.write(STRING_ENCODER.quoteAsString(nextPageToken));
+        writer.write("\"");
+      }
+      writer.write("}");
+      writer.flush();
+      completed = true;
+    }
+
+  }
+
+}
@@ -17,6 +17,8 @@
  */
 package org.icgc.dcc.ga4gh.server.variant;
 
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import ga4gh.VariantServiceOuterClass.GetVariantRequest;
 import ga4gh.VariantServiceOuterClass.SearchVariantsRequest;
@@ -28,26 +30,42 @@ import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.InnerHitBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.stereotype.Repository;
 
+import static com.google.common.base.Suppliers.memoizeWithExpiration;
 import static ga4gh.VariantServiceOuterClass.SearchVariantsRequest.PAGE_SIZE_FIELD_NUMBER;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 import static org.icgc.dcc.common.core.util.Joiners.DOT;
+import static org.icgc.dcc.ga4gh.common.GenomicBins.getOverlappingBins;
+import static org.icgc.dcc.ga4gh.common.GenomicBins.getRoutingKeys;
+import static org.icgc.dcc.ga4gh.common.IndexMetadata.readRoutingBinSize;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.BIN;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.ALTERNATIVE_BASES;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.CALL_SET_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.END;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_BASES;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.REFERENCE_NAME;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.START;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_IDS;
 import static org.icgc.dcc.ga4gh.common.TypeNames.CALLS;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
+import static org.icgc.dcc.ga4gh.server.config.ServerConfig.BIN_FILTER_ENABLED;
 import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_PAGE_SIZE;
-import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_SCROLL_TIMEOUT;
 import static org.icgc.dcc.ga4gh.server.config.ServerConfig.INDEX_NAME;
+import static org.icgc.dcc.ga4gh.server.config.ServerConfig.MAX_CALLS_PER_CALL_SET;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.resolveQuery;
+import static org.icgc.dcc.ga4gh.server.variant.VariantProjection.ALL;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.setSearchAfter;
 
 /**
  * Perform queries against elasticsearch to find desired variants.
@@ -57,60 +75,155 @@ import static org.icgc.dcc.ga4gh.server.config.ServerConfig.INDEX_NAME;
 public class VariantRepository {
 
   private static final String NESTED_TYPE = CALLS;
+  private static final String ROUTING_FIELD = "_routing";
+
+  /*
+   * Inner hits are bounded by the index.max_result_window
+   */
+  static final int MAX_INNER_HITS = 10000;
+
+  /*
+   * Without requested call sets, GA4GH returns no calls, so only these fields are fetched
+   */
+  private static final String[] VARIANT_FIELDS = { START, END, REFERENCE_NAME, REFERENCE_BASES, ALTERNATIVE_BASES };
   private static FieldDescriptor PAGE_SIZE_FIELD_DESCRIPTOR = SearchVariantsRequest.getDescriptor().findFieldByNumber(
       PAGE_SIZE_FIELD_NUMBER);
 
+  /*
+   * The bin size is read from the index the alias serves, and read again after a while to follow a reload
+   */
+  private static final long ROUTING_BIN_SIZE_EXPIRATION_MINUTES = 1;
+
   @NonNull private final Client client;
 
+  private final Supplier<Long> routingBinSize =
+      memoizeWithExpiration(() -> readRoutingBinSize(this.client, INDEX_NAME), ROUTING_BIN_SIZE_EXPIRATION_MINUTES, MINUTES);
+
   public SearchResponse findVariants(@NonNull SearchVariantsRequest request) {
+    return findVariants(request, ALL);
+  }
+
+  /**
+   * Pages with search_after, so the query of a page token is executed again from the sort values of the last hit
+   */
+  public SearchResponse findVariants(@NonNull SearchVariantsRequest request, @NonNull VariantProjection projection) {
     val size = resolvePageSize(request);
-    if (isNewRequest(request)){
-      val searchRequestBuilder = createScrollSearchRequest(size, DEFAULT_SCROLL_TIMEOUT);
-      val childBoolQuery = boolQuery()
-                  .must(
-                      matchQuery(getNestedFieldName(VARIANT_SET_IDS), request.getVariantSetId()));
-      request.getCallSetIdsList().forEach(id -> childBoolQuery.should(matchQuery(getNestedFieldName(CALL_SET_ID), id)));
-      val filteredChildBoolQuery = boolQuery().filter(childBoolQuery);
-
-      val boolQuery = boolQuery()
-          .must(matchQuery(REFERENCE_NAME, request.getReferenceName()))
-          .must(rangeQuery(START).gte(request.getStart()))
-          .must(rangeQuery(END).lt(request.getEnd()))
-          .must(nestedQuery(NESTED_TYPE,filteredChildBoolQuery,ScoreMode.None));
-
-      val filteredParentBoolQuery = boolQuery().filter(boolQuery);
-
-      return searchRequestBuilder.setQuery(filteredParentBoolQuery).get();
+    val query = resolveQuery(request, request.getPageToken());
+    val searchRequestBuilder = createSearchRequest(size);
+    val childBoolQuery = boolQuery()
+                .must(
+                    matchQuery(getNestedFieldName(VARIANT_SET_IDS), query.getVariantSetId()));
+    val filteredChildBoolQuery = boolQuery().filter(childBoolQuery);
+
+    val boolQuery = boolQuery()
+        .must(matchQuery(REFERENCE_NAME, query.getReferenceName()))
+        .must(rangeQuery(START).gte(query.getStart()))
+        .must(rangeQuery(END).lt(query.getEnd()))
+        .must(nestedQuery(NESTED_TYPE,filteredChildBoolQuery,ScoreMode.None));
+    filterOnBins(boolQuery, query);
+    if (projection == ALL && query.getCallSetIdsCount() > 0) {
+      fetchMatchingCalls(searchRequestBuilder, boolQuery, query);
     } else {
-      return client.prepareSearchScroll(request.getPageToken()).setScroll(DEFAULT_SCROLL_TIMEOUT).get();
+      searchRequestBuilder.setFetchSource(VARIANT_FIELDS, null);
     }
+
+    val filteredParentBoolQuery = boolQuery().filter(boolQuery);
+    routeToBins(searchRequestBuilder, query);
+    setSearchAfter(searchRequestBuilder, request.getPageToken());
+
+    return searchRequestBuilder.setQuery(filteredParentBoolQuery).get();
   }
 
+  /**
+   * With genomic bin routing, the shard of a variant cannot be derived from its id, so the routing of the document
+   * is looked up first
+   */
   public GetResponse findVariantById(@NonNull GetVariantRequest request) {
-    return client.prepareGet(INDEX_NAME, VARIANT, request.getVariantId()).get();
+    val getRequestBuilder = client.prepareGet(INDEX_NAME, VARIANT, request.getVariantId());
+    if (routingBinSize.get() > 0) {
+      getRequestBuilder.setRouting(findRouting(request.getVariantId()));
+    }
+    return getRequestBuilder.get();
+  }
+
+  private String findRouting(String variantId) {
+    val hits = client.prepareSearch(INDEX_NAME)
+        .setTypes(VARIANT)
+        .setQuery(idsQuery(VARIANT).addIds(variantId))
+        .setFetchSource(false)
+        .setSize(1)
+        .get()
+        .getHits();
+    if (hits.getHits().length == 0) {
+      return null;
+    }
+    val routing = hits.getAt(0).field(ROUTING_FIELD);
+    return routing == null ? null : routing.getValue();
+  }
+
+  /**
+   * Instead of shipping every call in the _source, only the calls of the requested call sets are returned, as the
+   * inner hits of an optional nested query. Being a should clause, it does not change which variants match.
+   */
+  private static void fetchMatchingCalls(SearchRequestBuilder searchRequestBuilder, BoolQueryBuilder boolQuery,
+      SearchVariantsRequest request) {
+    val callSetIds = ImmutableSet.copyOf(request.getCallSetIdsList());
+    boolQuery.should(
+        nestedQuery(NESTED_TYPE, termsQuery(getNestedFieldName(CALL_SET_ID), callSetIds), ScoreMode.None)
+            .innerHit(createCallsInnerHit(callSetIds.size())));
+    searchRequestBuilder.setFetchSource(VARIANT_FIELDS, null);
+  }
+
+  /**
+   * Elasticsearch allocates a collector of the inner hits size for every hit of the page, so the size follows the
+   * request: a call set can have several calls on the same variant, up to MAX_CALLS_PER_CALL_SET
+   */
+  static InnerHitBuilder createCallsInnerHit(int numCallSets) {
+    val size = Math.min((long) numCallSets * MAX_CALLS_PER_CALL_SET, MAX_INNER_HITS);
+    return new InnerHitBuilder()
+        .setName(NESTED_TYPE)
+        .setSize((int) size);
+  }
+
+  /**
+   * The bins overlapping the region are a superset of the matching variants, and unlike the ranges their terms filter
+   * is cached across the overlapping windows of a sweep. The range queries remain as the precise check.
+   */
+  private static void filterOnBins(BoolQueryBuilder boolQuery, SearchVariantsRequest request) {
+    if (BIN_FILTER_ENABLED) {
+      val bins = getOverlappingBins(request.getStart(), request.getEnd());
+      if (!bins.isEmpty()) {
+        boolQuery.filter(termsQuery(BIN, bins));
+      }
+    }
+  }
+
+  /**
+   * Variants are routed by the bin of their start, and matching variants start inside the requested window
+   */
+  private void routeToBins(SearchRequestBuilder searchRequestBuilder, SearchVariantsRequest request) {
+    val binSize = routingBinSize.get();
+    if (binSize > 0) {
+      val routingKeys = getRoutingKeys(request.getReferenceName(), request.getStart(), request.getEnd(), binSize);
+      if (!routingKeys.isEmpty()) {
+        searchRequestBuilder.setRouting(routingKeys.toArray(new String[routingKeys.size()]));
+      }
+    }
   }
 
   private SearchRequestBuilder createSearchRequest(final int size) {
     return client.prepareSearch(INDEX_NAME)
         .setTypes(VARIANT)
         .addSort(START, SortOrder.ASC)
+        .addSort(DOC_ID, SortOrder.ASC)
         .setSize(size);
   }
 
-  private SearchRequestBuilder createScrollSearchRequest(final int size, TimeValue timeValue){
-    return createSearchRequest(size)
-        .setScroll(timeValue);
-  }
-
 
   private static String getNestedFieldName(String fieldName){
     return DOT.join(NESTED_TYPE, fieldName);
   }
 
-  private static boolean isNewRequest(SearchVariantsRequest searchVariantsRequest){
-    return "".equals(searchVariantsRequest.getPageToken());
-  }
-
   private static int resolvePageSize(SearchVariantsRequest request){
     return request.hasField(PAGE_SIZE_FIELD_DESCRIPTOR) ? request.getPageSize() : DEFAULT_PAGE_SIZE;
   }
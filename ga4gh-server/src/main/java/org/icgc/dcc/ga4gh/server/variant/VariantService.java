@@ -40,7 +40,7 @@ import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.search.SearchHit;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
+import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
 import org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair;
@@ -48,6 +48,7 @@ import org.icgc.dcc.ga4gh.server.util.Protobufs;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +59,10 @@ import static com.google.common.collect.Sets.newHashSet;
 import static org.icgc.dcc.common.core.util.stream.Collectors.toImmutableList;
 import static org.icgc.dcc.common.core.util.stream.Streams.stream;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.VARIANT_SET_IDS;
+import static org.icgc.dcc.ga4gh.common.TypeNames.CALLS;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.hasInnerHits;
+import static org.icgc.dcc.ga4gh.server.variant.VariantProjection.ALL;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.createNextPageToken;
 
 @Slf4j
 @Service
@@ -94,7 +99,7 @@ public class VariantService {
   private final EsCallSetConverterJson esEsCallSetConverter;
 
   @NonNull
-  private final EsVariantCallPairConverterJson esVariantCallPairConverter;
+  private final EsVariantCallPairSourceDecoder esVariantCallPairDecoder;
 
   /*
    * Variant Processing
@@ -105,28 +110,40 @@ public class VariantService {
     if (response.isSourceEmpty()) {
       return EMPTY_VARIANT;
     } else {
-      return convertToVariant(response.getId(), response.getSource());
+      return convertToVariant(response.getId(), esVariantCallPairDecoder.decode(response.getSourceAsBytesRef()));
     }
   }
 
   public SearchVariantsResponse searchVariants(@NonNull SearchVariantsRequest request) {
-      val response = variantRepository.findVariants(request);
-      if (request.getCallSetIdsCount() > 0){
-        val callsetIds = newHashSet(((UnmodifiableLazyStringList) request.getCallSetIdsList()).getUnmodifiableView());
-        return buildSearchVariantResponse(response, callsetIds);
-      } else {
-        return buildSearchVariantResponse(response, EMPTY_STRING_SET);
-      }
+    return searchVariants(request, ALL);
   }
 
-  private Variant convertToVariant(final String id, @NonNull Map<String, Object> source, Set<String> allowedCallSetIds) {
-    val esVariantCallPair = esVariantCallPairConverter.convertFromSource(source, allowedCallSetIds);
-    return convertToVariant(id, esVariantCallPair);
+  public SearchVariantsResponse searchVariants(@NonNull SearchVariantsRequest request,
+      @NonNull VariantProjection projection) {
+      val response = variantRepository.findVariants(request, projection);
+      return buildSearchVariantResponse(request, response, resolveAllowedCallSetIds(request));
   }
 
-  private Variant convertToVariant(final String id, @NonNull Map<String, Object> source) {
-    val esVariantCallPair = esVariantCallPairConverter.convertFromSource(source);
-    return convertToVariant(id, esVariantCallPair);
+  /**
+   * Streaming variant of searchVariants: each variant is written as soon as it is converted, instead of building the
+   * whole SearchVariantsResponse first
+   */
+  public void searchVariants(@NonNull SearchVariantsRequest request, @NonNull VariantProjection projection,
+      @NonNull SearchVariantsResponseWriter writer) throws IOException {
+    val response = variantRepository.findVariants(request, projection);
+    val allowedCallSetIds = resolveAllowedCallSetIds(request);
+    for (val hit : response.getHits()) {
+      writer.writeVariant(convertToVariant(hit, allowedCallSetIds));
+    }
+    writer.writeNextPageToken(createNextPageToken(request, request.getPageToken(), response));
+  }
+
+  private static Set<String> resolveAllowedCallSetIds(SearchVariantsRequest request) {
+    if (request.getCallSetIdsCount() > 0){
+      return newHashSet(((UnmodifiableLazyStringList) request.getCallSetIdsList()).getUnmodifiableView());
+    } else {
+      return EMPTY_STRING_SET;
+    }
   }
 
   private Variant convertToVariant(String id, EsVariantCallPair esVariantCallPair) {
@@ -150,17 +167,16 @@ public class VariantService {
     return variantBuilder.build();
   }
 
-  private Variant convertToVariant(@NonNull SearchHit hit) {
-    if (hit.hasSource()) {
-      return convertToVariant(hit.getId(), hit.getSource());
-    } else {
-      return EMPTY_VARIANT;
-    }
-  }
-
+  /**
+   * Searches exclude the calls from the _source, and only return the calls of the requested call sets as inner hits,
+   * already filtered. The raw _source bytes are decoded, the source map of the hit is never built
+   */
   private Variant convertToVariant(@NonNull SearchHit hit, Set<String> allowedCallSetIds) {
-    if (hit.hasSource()) {
-      return convertToVariant(hit.getId(), hit.getSource(), allowedCallSetIds);
+    if (hit.hasSource() && hasInnerHits(hit, CALLS)) {
+      return convertToVariant(hit.getId(),
+          esVariantCallPairDecoder.decode(hit.getSourceRef(), hit.getInnerHits().get(CALLS)));
+    } else if (hit.hasSource()) {
+      return convertToVariant(hit.getId(), esVariantCallPairDecoder.decode(hit.getSourceRef(), allowedCallSetIds));
     } else {
       return EMPTY_VARIANT;
     }
@@ -183,7 +199,7 @@ public class VariantService {
   public SearchVariantSetsResponse searchVariantSets(@NonNull SearchVariantSetsRequest request) {
     log.info("Getting VariantSetIds for data_set_id: " + request.getDatasetId());
     val response = this.variantSetRepository.findVariantSets(request);
-    return buildSearchVariantSetsResponse(response);
+    return buildSearchVariantSetsResponse(request, response);
   }
 
   private VariantSet convertToVariantSet(final String id, @NonNull Map<String, Object> source) {
@@ -205,8 +221,9 @@ public class VariantService {
 
   }
 
-  private SearchVariantsResponse buildSearchVariantResponse(@NonNull SearchResponse searchResponse, Set<String> allowedCallSetIds) {
-    val pageToken = searchResponse.getScrollId();
+  private SearchVariantsResponse buildSearchVariantResponse(@NonNull SearchVariantsRequest request,
+      @NonNull SearchResponse searchResponse, Set<String> allowedCallSetIds) {
+    val pageToken = createNextPageToken(request, request.getPageToken(), searchResponse);
     return SearchVariantsResponse.newBuilder()
         .setNextPageToken(pageToken)
         .addAllVariants(
@@ -217,9 +234,10 @@ public class VariantService {
         .build();
   }
 
-  private SearchVariantSetsResponse buildSearchVariantSetsResponse(@NonNull SearchResponse response) {
+  private SearchVariantSetsResponse buildSearchVariantSetsResponse(@NonNull SearchVariantSetsRequest request,
+      @NonNull SearchResponse response) {
     return SearchVariantSetsResponse.newBuilder()
-        .setNextPageToken(response.getScrollId())
+        .setNextPageToken(createNextPageToken(request, request.getPageToken(), response))
         .addAllVariantSets(
             Arrays.stream(response.getHits().getHits())
                 .map(this::convertToVariantSet)
@@ -245,7 +263,7 @@ public class VariantService {
   public SearchCallSetsResponse searchCallSets(@NonNull SearchCallSetsRequest request) {
     log.info("Getting CallSetIds for variant_set_id: " + request.getVariantSetId());
     val response = callsetRepository.findCallSets(request);
-    return buildSearchCallSetsResponse(response);
+    return buildSearchCallSetsResponse(request, response);
   }
 
   private CallSet convertToCallSet(final String id, @NonNull Map<String, Object> source) {
@@ -271,9 +289,10 @@ public class VariantService {
     }
   }
 
-  private SearchCallSetsResponse buildSearchCallSetsResponse(@NonNull SearchResponse response) {
+  private SearchCallSetsResponse buildSearchCallSetsResponse(@NonNull SearchCallSetsRequest request,
+      @NonNull SearchResponse response) {
     return SearchCallSetsResponse.newBuilder()
-        .setNextPageToken(response.getScrollId())
+        .setNextPageToken(createNextPageToken(request, request.getPageToken(), response))
         .addAllCallSets(
             Arrays.stream(response.getHits().getHits())
                 .map(this::convertToCallSet)
@@ -28,7 +28,6 @@ import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.icgc.dcc.ga4gh.server.config.ServerConfig;
@@ -39,10 +38,12 @@ import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.DATA_SET_ID;
+import static org.icgc.dcc.ga4gh.common.PropertyNames.DOC_ID;
 import static org.icgc.dcc.ga4gh.common.PropertyNames.getAggNameForProperty;
 import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT_SET;
 import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_PAGE_SIZE;
-import static org.icgc.dcc.ga4gh.server.config.ServerConfig.DEFAULT_SCROLL_TIMEOUT;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.resolveQuery;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.setSearchAfter;
 
 /**
  * Perform queries against elasticsearch to find desired variants.
@@ -83,16 +84,14 @@ public class VariantSetRepository {
 
   public SearchResponse findVariantSets(@NonNull SearchVariantSetsRequest request) {
     val pageSize = resolvePageSize(request);
-    if (isNewRequest(request)){
-      val searchRequestBuilder = createScrollSearchRequest(pageSize, DEFAULT_SCROLL_TIMEOUT);
-      val boolQuery = boolQuery()
-              .must(
-                  matchQuery(DATA_SET_ID, request.getDatasetId()));
-      val boolFilterboolQuery = boolQuery().filter(boolQuery);
-      return searchRequestBuilder.setQuery(boolFilterboolQuery).get();
-    } else {
-      return client.prepareSearchScroll(request.getPageToken()).setScroll(DEFAULT_SCROLL_TIMEOUT).get();
-    }
+    val query = resolveQuery(request, request.getPageToken());
+    val searchRequestBuilder = createSearchRequest(pageSize);
+    val boolQuery = boolQuery()
+            .must(
+                matchQuery(DATA_SET_ID, query.getDatasetId()));
+    val boolFilterboolQuery = boolQuery().filter(boolQuery);
+    setSearchAfter(searchRequestBuilder, request.getPageToken());
+    return searchRequestBuilder.setQuery(boolFilterboolQuery).get();
   }
 
   public GetResponse findVariantSetById(@NonNull GetVariantSetRequest request) {
@@ -103,18 +102,10 @@ public class VariantSetRepository {
     return client.prepareSearch(ServerConfig.INDEX_NAME)
         .setTypes(VARIANT_SET)
         .addSort(DATA_SET_ID, SortOrder.ASC)
+        .addSort(DOC_ID, SortOrder.ASC)
         .setSize(size);
   }
 
-  private SearchRequestBuilder createScrollSearchRequest(final int size, TimeValue timeValue) {
-    return createSearchRequest(size).setScroll(timeValue);
-  }
-
-
-  private static boolean isNewRequest(SearchVariantSetsRequest searchVariantsRequest){
-    return "".equals(searchVariantsRequest.getPageToken());
-  }
-
   private static int resolvePageSize(SearchVariantSetsRequest request){
     return request.hasField(VARIANT_SETS_PAGE_SIZE_FIELD_DESCRIPTOR) ? request.getPageSize() : DEFAULT_PAGE_SIZE;
   }
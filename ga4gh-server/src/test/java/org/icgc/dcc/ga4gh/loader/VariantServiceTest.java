@@ -10,9 +10,6 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.elasticsearch.client.Client;
 import org.icgc.dcc.ga4gh.common.model.converters.EsCallSetConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairConverterJson;
-import org.icgc.dcc.ga4gh.common.model.converters.EsVariantConverterJson;
 import org.icgc.dcc.ga4gh.common.model.converters.EsVariantSetConverterJson;
 import org.icgc.dcc.ga4gh.server.config.ServerConfig;
 import org.icgc.dcc.ga4gh.server.variant.CallSetRepository;
@@ -26,6 +23,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.createEsVariantCallPairSourceDecoder;
 import static org.icgc.dcc.ga4gh.server.Factory.newClient;
 
 /*
@@ -63,15 +61,12 @@ public class VariantServiceTest {
       val headerRepo = new HeaderRepository(client);
       val callSetRepo = new CallSetRepository(client);
       val variantSetRepo = new VariantSetRepository(client);
-      val esVariantConverter = new EsVariantConverterJson();
       val esVariantSetConverter = new EsVariantSetConverterJson();
       val esCallSetConverter = new EsCallSetConverterJson();
-      val esCallConverter = new EsConsensusCallConverterJson();
-      val esVariantCallPairConverter = new EsVariantCallPairConverterJson(esVariantConverter
-      , esCallConverter, esVariantConverter, esCallConverter);
+      val esVariantCallPairDecoder = createEsVariantCallPairSourceDecoder();
 
       variantService =
-          new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairConverter);
+          new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairDecoder);
     } catch (Exception e) {
       log.error("Message[{}] : {}\nStackTrace: {}", e.getClass().getName(), e.getMessage(), e);
     }
@@ -84,11 +79,9 @@ public class VariantServiceTest {
 
 
   public static void main(String[] args) {
-    val esVariantConverter = new EsVariantConverterJson();
     val esVariantSetConverter = new EsVariantSetConverterJson();
     val esCallSetConverter = new EsCallSetConverterJson();
-    val esCallConverter = new EsConsensusCallConverterJson();
-    val esVariantCallPairConverter = new EsVariantCallPairConverterJson(esVariantConverter,esCallConverter,esVariantConverter, esCallConverter);
+    val esVariantCallPairDecoder = createEsVariantCallPairSourceDecoder();
     val searchVariantRequest = SearchVariantsRequest.newBuilder()
         .setStart(0)
         .setEnd(10000000)
@@ -134,7 +127,7 @@ public class VariantServiceTest {
     val callSetRepo = new CallSetRepository(client);
     val variantSetRepo = new VariantSetRepository(client);
 
-    val variantService = new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairConverter);
+    val variantService = new VariantService(variantRepo, headerRepo, callSetRepo, variantSetRepo, esVariantSetConverter, esCallSetConverter, esVariantCallPairDecoder);
 
     val variant = variantService.getVariant(getVariantRequest);
     val searchVariantResponse = variantService.searchVariants(searchVariantRequest);
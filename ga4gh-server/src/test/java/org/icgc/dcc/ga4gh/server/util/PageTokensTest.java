@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.icgc.dcc.ga4gh.server.util;
+
+import ga4gh.VariantServiceOuterClass.SearchVariantsRequest;
+import lombok.val;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.icgc.dcc.ga4gh.server.errors.GAServerException;
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.ga4gh.common.TypeNames.VARIANT;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.NO_MORE_PAGES;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.createNextPageToken;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.resolveQuery;
+import static org.icgc.dcc.ga4gh.server.util.PageTokens.setSearchAfter;
+
+public class PageTokensTest {
+
+  private static final SearchVariantsRequest REQUEST = SearchVariantsRequest.newBuilder()
+      .setVariantSetId("3")
+      .addCallSetIds("1734")
+      .setReferenceName("1")
+      .setStart(0)
+      .setEnd(1000000)
+      .setPageSize(2)
+      .build();
+
+  @Test
+  public void testNextPageTokenRoundTrip() {
+    val response = createSearchResponse(5, new Object[] { 10L, 6L }, new Object[] { 10L, 7L });
+    val pageToken = createNextPageToken(REQUEST, NO_MORE_PAGES, response);
+    assertThat(pageToken).isNotEqualTo(NO_MORE_PAGES);
+
+    // The next request may differ from the first one, but the query of the token is used
+    val nextRequest = SearchVariantsRequest.newBuilder().setPageToken(pageToken).build();
+    assertThat(resolveQuery(nextRequest, pageToken)).isEqualTo(REQUEST);
+
+    val searchRequestBuilder = createSearchRequestBuilder();
+    setSearchAfter(searchRequestBuilder, pageToken);
+    assertThat(searchRequestBuilder.request().source().searchAfter()).containsExactly(10, 7);
+
+    // Hits returned by the previous pages count towards the total
+    val lastResponse = createSearchResponse(5, new Object[] { 11L, 8L }, new Object[] { 12L, 9L });
+    val nextPageToken = createNextPageToken(nextRequest, pageToken, lastResponse);
+    assertThat(nextPageToken).isNotEqualTo(NO_MORE_PAGES);
+    val finalResponse = createSearchResponse(5, new Object[] { 13L, 10L });
+    assertThat(createNextPageToken(nextRequest, nextPageToken, finalResponse)).isEqualTo(NO_MORE_PAGES);
+  }
+
+  @Test
+  public void testFirstPage() {
+    assertThat(resolveQuery(REQUEST, NO_MORE_PAGES)).isSameAs(REQUEST);
+    val searchRequestBuilder = createSearchRequestBuilder();
+    setSearchAfter(searchRequestBuilder, NO_MORE_PAGES);
+    assertThat(searchRequestBuilder.request().source().searchAfter()).isNull();
+    assertThat(createNextPageToken(REQUEST, NO_MORE_PAGES, createSearchResponse(2, new Object[] { 10L, 6L },
+        new Object[] { 10L, 7L }))).isEqualTo(NO_MORE_PAGES);
+    assertThat(createNextPageToken(REQUEST, NO_MORE_PAGES, createSearchResponse(0))).isEqualTo(NO_MORE_PAGES);
+  }
+
+  @Test(expected = GAServerException.class)
+  public void testResolveQueryRejectsMalformedToken() {
+    resolveQuery(REQUEST, "not a page token");
+  }
+
+  @Test(expected = GAServerException.class)
+  public void testResolveQueryRejectsInvalidQuery() {
+    resolveQuery(REQUEST, encode("{\"query\":\"bm90IGEgcmVxdWVzdA\",\"search_after\":[1],\"num_returned\":2}"));
+  }
+
+  @Test(expected = GAServerException.class)
+  public void testSetSearchAfterRejectsTokenWithoutSortValues() {
+    setSearchAfter(createSearchRequestBuilder(), encode("{\"query\":\"\",\"num_returned\":2}"));
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(UTF_8));
+  }
+
+  private static SearchRequestBuilder createSearchRequestBuilder() {
+    return new SearchRequestBuilder(null, SearchAction.INSTANCE).setSize(REQUEST.getPageSize());
+  }
+
+  private static SearchResponse createSearchResponse(long totalHits, Object[]... sortValues) {
+    val hits = new InternalSearchHit[sortValues.length];
+    for (int i = 0; i < sortValues.length; i++) {
+      hits[i] = new InternalSearchHit(i, Integer.toString(i), new Text(VARIANT), emptyMap());
+      hits[i].sortValues(sortValues[i], new DocValueFormat[] { DocValueFormat.RAW, DocValueFormat.RAW });
+    }
+    val internalResponse = new InternalSearchResponse(new InternalSearchHits(hits, totalHits, 1.0f), null, null,
+        null, false, null);
+    return new SearchResponse(internalResponse, null, 1, 1, 1, ShardSearchFailure.EMPTY_ARRAY);
+  }
+
+}
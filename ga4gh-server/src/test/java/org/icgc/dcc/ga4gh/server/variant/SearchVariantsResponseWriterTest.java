@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.icgc.dcc.ga4gh.server.variant;
+
+import com.googlecode.protobuf.format.JsonFormat;
+import ga4gh.VariantServiceOuterClass.SearchVariantsResponse;
+import ga4gh.Variants.Call;
+import ga4gh.Variants.Variant;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.ga4gh.server.variant.SearchVariantsResponseWriter.createJsonWriter;
+import static org.icgc.dcc.ga4gh.server.variant.SearchVariantsResponseWriter.createProtobufWriter;
+
+public class SearchVariantsResponseWriterTest {
+
+  private static final SearchVariantsResponse RESPONSE = SearchVariantsResponse.newBuilder()
+      .addVariants(createTestVariant("1", "A"))
+      .addVariants(createTestVariant("2", "GAT"))
+      .setNextPageToken("eyJxdWVyeSI6IjEifQ==")
+      .build();
+
+  @Test
+  @SneakyThrows
+  public void testProtobufStreamParsesAsResponse() {
+    val outputStream = new ByteArrayOutputStream();
+    write(createProtobufWriter(outputStream), RESPONSE);
+    assertThat(SearchVariantsResponse.parseFrom(outputStream.toByteArray())).isEqualTo(RESPONSE);
+  }
+
+  @Test
+  @SneakyThrows
+  public void testJsonStreamParsesAsResponse() {
+    val outputStream = new ByteArrayOutputStream();
+    write(createJsonWriter(outputStream), RESPONSE);
+    val builder = SearchVariantsResponse.newBuilder();
+    new JsonFormat().merge(new ByteArrayInputStream(outputStream.toByteArray()), builder);
+    assertThat(builder.build()).isEqualTo(RESPONSE);
+  }
+
+  @Test
+  @SneakyThrows
+  public void testEmptyLastPage() {
+    val lastPage = SearchVariantsResponse.getDefaultInstance();
+
+    val protobufStream = new ByteArrayOutputStream();
+    write(createProtobufWriter(protobufStream), lastPage);
+    assertThat(SearchVariantsResponse.parseFrom(protobufStream.toByteArray())).isEqualTo(lastPage);
+
+    val jsonStream = new ByteArrayOutputStream();
+    write(createJsonWriter(jsonStream), lastPage);
+    assertThat(jsonStream.toString("UTF-8")).isEqualTo("{\"variants\": []}");
+  }
+
+  @SneakyThrows
+  private static void write(SearchVariantsResponseWriter writer, SearchVariantsResponse response) {
+    for (val variant : response.getVariantsList()) {
+      writer.writeVariant(variant);
+    }
+    writer.writeNextPageToken(response.getNextPageToken());
+  }
+
+  private static Variant createTestVariant(String id, String referenceBases) {
+    return Variant.newBuilder()
+        .setId(id)
+        .setReferenceName("1")
+        .setReferenceBases(referenceBases)
+        .addAlternateBases("G")
+        .setStart(4)
+        .setEnd(50)
+        .addCalls(Call.newBuilder()
+            .setCallSetId("1734")
+            .setCallSetName("sample")
+            .addGenotype(0)
+            .addGenotype(1))
+        .build();
+  }
+
+}
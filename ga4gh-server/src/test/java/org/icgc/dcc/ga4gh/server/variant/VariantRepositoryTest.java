@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 The Ontario Institute for Cancer Research. All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Public License v3.0.
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.icgc.dcc.ga4gh.server.variant;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.val;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.icgc.dcc.ga4gh.common.model.converters.EsConsensusCallConverterJson;
+import org.icgc.dcc.ga4gh.common.model.es.EsConsensusCall;
+import org.icgc.dcc.ga4gh.common.model.es.EsVariant;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.icgc.dcc.common.core.util.stream.Collectors.toImmutableList;
+import static org.icgc.dcc.ga4gh.common.TypeNames.CALLS;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSmileEncoder.createEsVariantCallPairSmileEncoder;
+import static org.icgc.dcc.ga4gh.common.model.converters.EsVariantCallPairSourceDecoder.createEsVariantCallPairSourceDecoder;
+import static org.icgc.dcc.ga4gh.common.model.es.EsVariantCallPair.createEsVariantCallPair;
+import static org.icgc.dcc.ga4gh.server.config.ServerConfig.MAX_CALLS_PER_CALL_SET;
+import static org.icgc.dcc.ga4gh.server.variant.VariantRepository.MAX_INNER_HITS;
+import static org.icgc.dcc.ga4gh.server.variant.VariantRepository.createCallsInnerHit;
+
+public class VariantRepositoryTest {
+
+  private static final EsConsensusCallConverterJson CALL_CONVERTER = new EsConsensusCallConverterJson();
+
+  @Test
+  public void testCallsInnerHitSize() {
+    assertThat(createCallsInnerHit(1).getSize()).isEqualTo(MAX_CALLS_PER_CALL_SET).isGreaterThan(1);
+    assertThat(createCallsInnerHit(3).getSize()).isEqualTo(3 * MAX_CALLS_PER_CALL_SET);
+    assertThat(createCallsInnerHit(Integer.MAX_VALUE).getSize()).isEqualTo(MAX_INNER_HITS);
+  }
+
+  @Test
+  public void testSeveralCallsOfOneCallSetAreReturned() {
+    val variant = EsVariant.builder()
+        .referenceName("1")
+        .start(4)
+        .end(50)
+        .referenceBases("GAA")
+        .alternativeBases(newArrayList("G"))
+        .build();
+
+    // One call per VCF file of the sample that contains the variant, all of the same call set
+    val numCalls = MAX_CALLS_PER_CALL_SET;
+    val calls = IntStream.range(0, numCalls)
+        .mapToObj(i -> EsConsensusCall.builder()
+            .callSetId(1)
+            .callSetName("sample")
+            .variantSetIds(newArrayList(i))
+            .info(ImmutableMap.of("file", Integer.toString(i)))
+            .build())
+        .collect(toImmutableList());
+
+    // The inner hits are as many as the inner hits size of a search for that single call set
+    val innerHitsSize = createCallsInnerHit(1).getSize();
+    val callHits = calls.stream()
+        .limit(innerHitsSize)
+        .map(VariantRepositoryTest::createCallHit)
+        .toArray(InternalSearchHit[]::new);
+    val source = new BytesArray(createEsVariantCallPairSmileEncoder()
+        .encode(createEsVariantCallPair(variant, newArrayList()), 7));
+
+    val pair = createEsVariantCallPairSourceDecoder().decode(source, new InternalSearchHits(callHits, numCalls, 0));
+    assertThat(pair.getVariant()).isEqualTo(variant);
+    assertThat(pair.getCalls()).isEqualTo(calls);
+  }
+
+  private static InternalSearchHit createCallHit(EsConsensusCall call) {
+    return new InternalSearchHit(0, "1", new Text(CALLS), emptyMap())
+        .sourceRef(new BytesArray(CALL_CONVERTER.convertToObjectNode(call).toString().getBytes(UTF_8)));
+  }
+
+}